@@ -0,0 +1,193 @@
+package ca.fuwafuwa.gaku
+
+import android.graphics.Bitmap
+import android.util.Log
+import java.util.ArrayDeque
+import java.util.WeakHashMap
+
+/**
+ * Reusable ARGB_8888 bitmaps and pixel arrays for the capture and OCR path, so moving the capture box around doesn't
+ * allocate new ones on every capture.
+ *
+ * Both are kept in buckets by size, rounded up to a power of two, and whatever is taken from a bucket is big enough for
+ * any size in it: pixel arrays are allocated with the bucket's length, and bitmaps with at least the bucket's byte
+ * count and then reconfigured to the size asked for.
+ *
+ * A bitmap can have more than one owner, the capture preview and an OCR request say, so every owner calls
+ * [retainBitmap] and [releaseBitmap] and it only goes back to the pool when the last one has released it. Owners must
+ * stop drawing it before releasing it. Bitmaps that never get released, like the ones handed to the result windows,
+ * are left to the garbage collector.
+ */
+class BitmapPool(private val maxPooledBytes: Long)
+{
+    /**
+     * @property bytesAllocated Bytes of bitmaps and pixel arrays the pool had to allocate because none were free
+     */
+    class Stats(val hits: Long, val misses: Long, val bytesAllocated: Long, val pooledBytes: Long)
+    {
+        val hitRatio: Double
+            get() = if (hits + misses == 0L) 0.0 else hits.toDouble() / (hits + misses)
+
+        override fun toString(): String
+        {
+            return "$hits hits, $misses misses, ${"%.2f".format(hitRatio)} hit ratio, $bytesAllocated bytes allocated, $pooledBytes bytes pooled"
+        }
+    }
+
+    private val bitmaps = HashMap<Int, ArrayDeque<Bitmap>>()
+    private val pixels = HashMap<Int, ArrayDeque<IntArray>>()
+
+    // Owners of every bitmap handed out and not yet back in the pool. Weak so bitmaps that are never released don't leak.
+    private val bitmapOwners = WeakHashMap<Bitmap, Int>()
+
+    private var pooledBytes = 0L
+    private var hits = 0L
+    private var misses = 0L
+    private var bytesAllocated = 0L
+
+    /**
+     * @return A mutable ARGB_8888 bitmap of width by height with undefined contents, owned by the caller
+     */
+    @Synchronized fun acquireBitmap(width: Int, height: Int): Bitmap
+    {
+        val bucket = getBucket(width.toLong() * height * BYTES_PER_PIXEL)
+        var bitmap = bitmaps[bucket]?.pollLast()
+
+        if (bitmap != null)
+        {
+            pooledBytes -= bitmap.allocationByteCount
+            bitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888)
+            recordHit()
+        }
+        else
+        {
+            // Tall enough to hold anything in its bucket, then shrunk to the size asked for
+            val bucketHeight = (((1L shl bucket) + width * BYTES_PER_PIXEL - 1) / (width * BYTES_PER_PIXEL)).toInt()
+            bitmap = Bitmap.createBitmap(width, bucketHeight, Bitmap.Config.ARGB_8888)
+            bitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888)
+            recordMiss(bitmap.allocationByteCount.toLong())
+        }
+
+        bitmapOwners[bitmap] = 1
+        return bitmap
+    }
+
+    /**
+     * Adds an owner to a bitmap from [acquireBitmap]. Does nothing for other bitmaps.
+     */
+    @Synchronized fun retainBitmap(bitmap: Bitmap)
+    {
+        val owners = bitmapOwners[bitmap] ?: return
+        bitmapOwners[bitmap] = owners + 1
+    }
+
+    /**
+     * Removes an owner from a bitmap from [acquireBitmap], and takes it back once it has none. Does nothing for other
+     * bitmaps.
+     */
+    @Synchronized fun releaseBitmap(bitmap: Bitmap?)
+    {
+        if (bitmap == null) return
+        val owners = bitmapOwners[bitmap] ?: return
+
+        if (owners > 1)
+        {
+            bitmapOwners[bitmap] = owners - 1
+            return
+        }
+
+        bitmapOwners.remove(bitmap)
+
+        val bytes = bitmap.allocationByteCount.toLong()
+        if (bitmap.isRecycled || pooledBytes + bytes > maxPooledBytes) return
+
+        bitmaps.getOrPut(getBucket(bytes, roundUp = false)) { ArrayDeque() }.addLast(bitmap)
+        pooledBytes += bytes
+    }
+
+    /**
+     * @return An array of at least size pixels with undefined contents, owned by the caller
+     */
+    @Synchronized fun acquirePixels(size: Int): IntArray
+    {
+        val bucket = getBucket(size.toLong())
+        val array = pixels[bucket]?.pollLast()
+
+        if (array != null)
+        {
+            pooledBytes -= array.size.toLong() * BYTES_PER_PIXEL
+            recordHit()
+            return array
+        }
+
+        recordMiss((1L shl bucket) * BYTES_PER_PIXEL)
+        return IntArray(1 shl bucket)
+    }
+
+    /**
+     * Takes back an array from [acquirePixels]. Arrays of other lengths are ignored.
+     */
+    @Synchronized fun releasePixels(array: IntArray?)
+    {
+        if (array == null || Integer.bitCount(array.size) != 1) return
+
+        val bytes = array.size.toLong() * BYTES_PER_PIXEL
+        if (pooledBytes + bytes > maxPooledBytes) return
+
+        pixels.getOrPut(getBucket(array.size.toLong())) { ArrayDeque() }.addLast(array)
+        pooledBytes += bytes
+    }
+
+    /**
+     * Drops everything in the pool. Bitmaps and arrays still owned can be released as usual afterwards.
+     */
+    @Synchronized fun clear()
+    {
+        bitmaps.clear()
+        pixels.clear()
+        pooledBytes = 0
+    }
+
+    @Synchronized fun getStats(): Stats
+    {
+        return Stats(hits, misses, bytesAllocated, pooledBytes)
+    }
+
+    private fun recordHit()
+    {
+        hits++
+        logStats()
+    }
+
+    private fun recordMiss(bytes: Long)
+    {
+        misses++
+        bytesAllocated += bytes
+        logStats()
+    }
+
+    private fun logStats()
+    {
+        if ((hits + misses) % STATS_LOG_INTERVAL == 0L)
+        {
+            Log.d(TAG, getStats().toString())
+        }
+    }
+
+    companion object
+    {
+        private val TAG = BitmapPool::class.java.name
+
+        private const val BYTES_PER_PIXEL = 4
+        private const val STATS_LOG_INTERVAL = 100L
+
+        /**
+         * @return The power of two a size falls under, rounded up or down
+         */
+        private fun getBucket(size: Long, roundUp: Boolean = true): Int
+        {
+            if (size <= 1) return 0
+            return if (roundUp) 64 - java.lang.Long.numberOfLeadingZeros(size - 1) else 63 - java.lang.Long.numberOfLeadingZeros(size)
+        }
+    }
+}
@@ -4,7 +4,10 @@ package ca.fuwafuwa.gaku
 
 // Thanks to the fact that SqliteOpenHelper.onUpgrade() doesn't work (due to multi-threading and getDao() being called before onUpgrade()),
 // we version/upgrade the DBs by changing the name. Lol. Should probably fix this if this becomes an issue in the future.
-const val JMDICT_DATABASE_NAME = "DB_KakuDict-02-16-2019.db"
+const val JMDICT_DATABASE_NAME = "DB_KakuDict-10-18-2026.db"
+const val JMDICT_BINARY_NAME = "DB_KakuDict-10-18-2026.bin"
+const val KANJIDICT_DATABASE_NAME = "DB_KanjiDict-10-18-2026.db"
+const val KANJIDICT_TABLE_NAME = "DB_KanjiDict-10-18-2026.kanji"
 const val TESS_FOLDER_NAME = "tessdata"
 const val TESS_DATA_NAME = "jpn.traineddata"
 const val SCREENSHOT_FOLDER_NAME = "screenshots"
@@ -22,6 +25,7 @@ const val GAKU_PREF_INSTANT_MODE = "InstantMode"
 const val GAKU_PREF_FIRST_LAUNCH = "FirstLaunch"
 const val GAKU_PREF_TIMES_LAUNCHED = "TimesLaunched"
 const val GAKU_PREF_PLAY_STORE_RATED = "PlayStoreRated"
+const val GAKU_PREF_BINARY_DICTIONARY = "BinaryDictionary"
 
 const val EXTRA_PROJECTION_RESULT_CODE = "ca.fuwafuwa.gaku.PROJECTION_RESULT_CODE"
 const val EXTRA_PROJECTION_RESULT_INTENT = "ca.fuwafuwa.gaku.PROJECTION_RESULT_INTENT"
@@ -18,6 +18,13 @@ public abstract class DatabaseHelper extends OrmLiteSqliteOpenHelper implements
         super(context, databaseName, factory, databaseVersion);
     }
 
+    /**
+     * @return Pool of read-only connections to this helper's database, for lookups
+     */
+    public ReadOnlyDatabase getReadOnlyDatabase() {
+        return ReadOnlyDatabase.instance(getDatabaseName());
+    }
+
     public abstract void deleteDatabase();
 }
 
@@ -0,0 +1,270 @@
+package ca.fuwafuwa.gaku.Database.Index
+
+/**
+ * Immutable double-array trie mapping strings to their index in the (sorted, unique) key list it was
+ * built from.
+ *
+ * Characters are remapped to a dense alphabet before insertion, with the most frequent characters
+ * getting the smallest codes, so the arrays stay compact even though keys are spread over the whole
+ * CJK range. Node 0 is the root, a slot is owned by node s when check[slot] == s, and each key ends
+ * in a terminal slot (code 0) whose base holds -(value + 1).
+ */
+class DoubleArrayTrie private constructor(private val charCodes: CharArray,
+                                          private val base: IntArray,
+                                          private val check: IntArray)
+{
+    /**
+     * A key found during [commonPrefixSearch]
+     *
+     * @property length Length of the key
+     * @property value Index of the key
+     */
+    data class Match(val length: Int, val value: Int)
+
+    val size: Int get() = base.size
+
+    /**
+     * @return Index of the key equal to text[start, end), or -1 if there is no such key
+     */
+    fun exactMatch(text: CharSequence, start: Int = 0, end: Int = text.length): Int
+    {
+        var node = 0
+
+        for (i in start until end)
+        {
+            node = child(node, text[i])
+            if (node < 0) return -1
+        }
+
+        return valueOf(node)
+    }
+
+    /**
+     * Walks text[start, end) through the trie once, collecting every key that is a prefix of it.
+     *
+     * @param matches Receives the keys that are prefixes of the text, longest first
+     * @return Length of the longest prefix of the text that is also a prefix of some key
+     */
+    fun commonPrefixSearch(text: CharSequence, start: Int, end: Int, matches: MutableList<Match>): Int
+    {
+        val firstMatch = matches.size
+        var node = 0
+        var length = 0
+
+        while (start + length < end)
+        {
+            node = child(node, text[start + length])
+            if (node < 0) break
+
+            length++
+
+            val value = valueOf(node)
+            if (value >= 0) matches.add(Match(length, value))
+        }
+
+        matches.subList(firstMatch, matches.size).reverse()
+        return length
+    }
+
+    /**
+     * @return Length of the longest prefix of text[start, end) that is also a prefix of some key
+     */
+    fun prefixLength(text: CharSequence, start: Int = 0, end: Int = text.length): Int
+    {
+        var node = 0
+        var length = 0
+
+        while (start + length < end)
+        {
+            node = child(node, text[start + length])
+            if (node < 0) break
+
+            length++
+        }
+
+        return length
+    }
+
+    private fun child(node: Int, char: Char): Int
+    {
+        val code = charCodes[char.code].code
+        if (code == 0) return -1
+
+        val next = base[node] + code
+        return if (next < check.size && check[next] == node) next else -1
+    }
+
+    private fun valueOf(node: Int): Int
+    {
+        val terminal = base[node]
+        return if (terminal < check.size && check[terminal] == node && base[terminal] < 0) -base[terminal] - 1 else -1
+    }
+
+    companion object
+    {
+        private const val FREE = -1
+        private const val ROOT_CHECK = -2
+
+        /**
+         * @param keys Keys sorted in natural [String] order without duplicates
+         */
+        fun build(keys: List<String>): DoubleArrayTrie
+        {
+            return Builder(keys).build()
+        }
+    }
+
+    private class Builder(private val keys: List<String>)
+    {
+        private val charCodes = CharArray(Char.MAX_VALUE.code + 1)
+        private var base = IntArray(1 shl 16)
+        private var check = IntArray(1 shl 16) { FREE }
+        private var nextCheckPos = 1
+        private var maxIndex = 0
+
+        // Scratch space for the children of the node currently being placed
+        private var childCodes = IntArray(256)
+        private var childBegins = IntArray(256)
+
+        fun build(): DoubleArrayTrie
+        {
+            assignCharCodes()
+
+            check[0] = ROOT_CHECK
+            if (keys.isNotEmpty())
+            {
+                insert(0, 0, keys.size, 0)
+            }
+
+            val length = maxIndex + 1
+            return DoubleArrayTrie(charCodes, base.copyOf(length), check.copyOf(length))
+        }
+
+        private fun assignCharCodes()
+        {
+            val counts = IntArray(Char.MAX_VALUE.code + 1)
+            for (key in keys)
+            {
+                for (char in key) counts[char.code]++
+            }
+
+            val used = (0..Char.MAX_VALUE.code).filter { counts[it] > 0 }.sortedByDescending { counts[it] }
+            for ((index, char) in used.withIndex())
+            {
+                charCodes[char] = (index + 1).toChar()
+            }
+        }
+
+        private fun codeAt(key: String, depth: Int): Int
+        {
+            return if (depth < key.length) charCodes[key[depth].code].code else 0
+        }
+
+        /**
+         * Places the children of [node], which is the common prefix of length [depth] of keys[begin, end)
+         */
+        private fun insert(node: Int, begin: Int, end: Int, depth: Int)
+        {
+            // Keys are sorted, so keys sharing the same character at depth are contiguous (and a key ending here comes first)
+            var count = 0
+            var prevChar = -1
+            for (i in begin until end)
+            {
+                val key = keys[i]
+                val char = if (depth < key.length) key[depth].code else -1
+                if (i == begin || char != prevChar)
+                {
+                    ensureChildCapacity(count + 1)
+                    childCodes[count] = codeAt(key, depth)
+                    childBegins[count] = i
+                    count++
+                }
+                prevChar = char
+            }
+
+            val codes = childCodes.copyOf(count)
+            val begins = childBegins.copyOf(count)
+
+            val nodeBase = findBase(codes)
+            base[node] = nodeBase
+            for (code in codes)
+            {
+                check[nodeBase + code] = node
+            }
+
+            for (i in 0 until count)
+            {
+                val slot = nodeBase + codes[i]
+                val childEnd = if (i + 1 < count) begins[i + 1] else end
+
+                if (codes[i] == 0)
+                {
+                    base[slot] = -begins[i] - 1
+                }
+                else
+                {
+                    insert(slot, begins[i], childEnd, depth + 1)
+                }
+            }
+        }
+
+        private fun findBase(codes: IntArray): Int
+        {
+            val minCode = codes.minOrNull()!!
+            val maxCode = codes.maxOrNull()!!
+            var pos = maxOf(nextCheckPos, minCode + 1)
+            var occupied = 0
+            var first = true
+
+            while (true)
+            {
+                ensureCapacity(pos + maxCode - minCode + 1)
+
+                if (check[pos] != FREE)
+                {
+                    occupied++
+                    pos++
+                    continue
+                }
+                else if (first)
+                {
+                    nextCheckPos = pos
+                    first = false
+                }
+
+                val candidate = pos - minCode
+                if (codes.all { check[candidate + it] == FREE })
+                {
+                    // Same heuristic as darts: once the region before pos is almost full, stop rescanning it
+                    if (occupied.toDouble() / (pos - nextCheckPos + 1) >= 0.95)
+                    {
+                        nextCheckPos = pos
+                    }
+                    maxIndex = maxOf(maxIndex, candidate + maxCode)
+                    return candidate
+                }
+
+                pos++
+            }
+        }
+
+        private fun ensureCapacity(size: Int)
+        {
+            if (size <= base.size) return
+
+            val newSize = maxOf(size, base.size + base.size / 2)
+            base = base.copyOf(newSize)
+            val oldSize = check.size
+            check = check.copyOf(newSize)
+            check.fill(FREE, oldSize, newSize)
+        }
+
+        private fun ensureChildCapacity(size: Int)
+        {
+            if (size <= childCodes.size) return
+
+            childCodes = childCodes.copyOf(size * 2)
+            childBegins = childBegins.copyOf(size * 2)
+        }
+    }
+}
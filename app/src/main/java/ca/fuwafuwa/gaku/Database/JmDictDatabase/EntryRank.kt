@@ -0,0 +1,91 @@
+package ca.fuwafuwa.gaku.Database.JmDictDatabase
+
+import ca.fuwafuwa.gaku.DB_JMDICT_NAME
+import ca.fuwafuwa.gaku.DB_KANJIDICT_NAME
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized
+
+/**
+ * Packs everything search results are ordered by into a single int, computed once when the dictionary is built, so
+ * ranking results is an integer sort instead of parsing priorities inside every comparison. Lower ranks come first.
+ *
+ * From the most significant bits down:
+ *  - dictionary (2 bits): JMDICT, then KANJIDICT, then anything else
+ *  - 255 - kanji length (8 bits): longer matches first
+ *  - not the primary entry (1 bit)
+ *  - best priority tier (8 bits): nf01-nf48, then news, ichi, spec and gai, then no priority
+ */
+object EntryRank
+{
+    private const val DICTIONARY_SHIFT = 17
+    private const val LENGTH_SHIFT = 9
+    private const val PRIMARY_SHIFT = 8
+
+    private const val MAX_LENGTH = 255
+    private const val NO_PRIORITY = 255
+
+    @JvmStatic fun compute(entry: EntryOptimized): Int
+    {
+        return compute(entry.dictionary, entry.kanji, entry.isPrimaryEntry, entry.priorities)
+    }
+
+    @JvmStatic fun compute(dictionary: String?, kanji: String?, primaryEntry: Boolean, priorities: String?): Int
+    {
+        val length = minOf(kanji?.length ?: 0, MAX_LENGTH)
+
+        return (getDictionaryTier(dictionary) shl DICTIONARY_SHIFT) or
+               ((MAX_LENGTH - length) shl LENGTH_SHIFT) or
+               ((if (primaryEntry) 0 else 1) shl PRIMARY_SHIFT) or
+               getPriorityTier(priorities)
+    }
+
+    /**
+     * @return [rank], ordered as if the entry's kanji were [length] chars long. Entries found by one of their readings
+     * are ordered by how much of the text that reading covers rather than by their kanji.
+     */
+    @JvmStatic fun withLength(rank: Int, length: Int): Int
+    {
+        val lengthMask = MAX_LENGTH shl LENGTH_SHIFT
+        return (rank and lengthMask.inv()) or ((MAX_LENGTH - minOf(length, MAX_LENGTH)) shl LENGTH_SHIFT)
+    }
+
+    private fun getDictionaryTier(dictionary: String?): Int
+    {
+        return when (dictionary)
+        {
+            DB_JMDICT_NAME -> 0
+            DB_KANJIDICT_NAME -> 1
+            else -> 2
+        }
+    }
+
+    /**
+     * @param priorities Comma separated ke_pri/re_pri values of the entry
+     */
+    @JvmStatic fun getPriorityTier(priorities: String?): Int
+    {
+        if (priorities.isNullOrEmpty()) return NO_PRIORITY
+
+        var lowestPriority = NO_PRIORITY
+
+        for (priority in priorities.split(","))
+        {
+            val pri = when
+            {
+                priority.startsWith("nf") -> priority.substring(2).toIntOrNull() ?: NO_PRIORITY // looks like the range is nf01-nf48
+                priority == "news1" -> 60
+                priority == "news2" -> 70
+                priority == "ichi1" -> 80
+                priority == "ichi2" -> 90
+                priority == "spec1" -> 100
+                priority == "spec2" -> 110
+                priority == "gai1" -> 120
+                priority == "gai2" -> 130
+                else -> NO_PRIORITY
+            }
+
+            lowestPriority = minOf(lowestPriority, pri)
+        }
+
+        return lowestPriority
+    }
+}
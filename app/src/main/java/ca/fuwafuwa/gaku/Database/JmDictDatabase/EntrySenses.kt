@@ -0,0 +1,61 @@
+package ca.fuwafuwa.gaku.Database.JmDictDatabase
+
+import ca.fuwafuwa.gaku.DB_SPLIT_CHAR
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized
+
+/**
+ * The senses of an entry, read in place from its [DB_SPLIT_CHAR] separated meanings and parts of speech instead of
+ * splitting them into new strings.
+ *
+ * Sense boundaries are only found the first time they're needed, and are kept as offsets into the original strings:
+ * sense i is meanings[meaningStarts[i], meaningStarts[i + 1] - 1).
+ */
+class EntrySenses(private val meanings: String, private val pos: String)
+{
+    constructor(entry: EntryOptimized) : this(entry.meanings ?: "", entry.pos ?: "")
+
+    private val meaningStarts: IntArray by lazy(LazyThreadSafetyMode.NONE) { findStarts(meanings) }
+    private val posStarts: IntArray by lazy(LazyThreadSafetyMode.NONE) { findStarts(pos) }
+
+    val size: Int
+        get() = meaningStarts.size - 1
+
+    fun appendMeaning(sb: StringBuilder, sense: Int): StringBuilder
+    {
+        return sb.append(meanings, meaningStarts[sense], meaningStarts[sense + 1] - 1)
+    }
+
+    /**
+     * @return Whether the sense has any parts of speech. Senses past the last one with parts of speech have none.
+     */
+    fun hasPos(sense: Int): Boolean
+    {
+        return sense < posStarts.size - 1 && posStarts[sense + 1] - 1 > posStarts[sense]
+    }
+
+    fun appendPos(sb: StringBuilder, sense: Int): StringBuilder
+    {
+        return if (hasPos(sense)) sb.append(pos, posStarts[sense], posStarts[sense + 1] - 1) else sb
+    }
+
+    private fun findStarts(field: String): IntArray
+    {
+        var count = 1
+        var index = field.indexOf(DB_SPLIT_CHAR)
+        while (index >= 0)
+        {
+            count++
+            index = field.indexOf(DB_SPLIT_CHAR, index + 1)
+        }
+
+        // One past the end of the last sense is a start too, so every sense ends one before the next start
+        val starts = IntArray(count + 1)
+        for (i in 1 until count)
+        {
+            starts[i] = field.indexOf(DB_SPLIT_CHAR, starts[i - 1]) + 1
+        }
+        starts[count] = field.length + 1
+
+        return starts
+    }
+}
@@ -0,0 +1,15 @@
+package ca.fuwafuwa.gaku.Database.JmDictDatabase;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized;
+
+/**
+ * Somewhere dictionary entries can be fetched from by id, either the SQLite database or the binary dictionary file
+ */
+public interface IEntrySource
+{
+    List<EntryOptimized> getEntries(Collection<Integer> ids) throws SQLException;
+}
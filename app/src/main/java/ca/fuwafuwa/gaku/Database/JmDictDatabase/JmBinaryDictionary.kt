@@ -0,0 +1,338 @@
+package ca.fuwafuwa.gaku.Database.JmDictDatabase
+
+import android.content.Context
+import android.util.Log
+import ca.fuwafuwa.gaku.Database.IDatabaseHelper
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized
+import ca.fuwafuwa.gaku.JMDICT_BINARY_NAME
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Read-only copy of the EntryOptimized table that is memory-mapped instead of going through SQLite and OrmLite.
+ *
+ * Entries are handed out as views over the mapped file and only decode a field the first time it is read, so
+ * looking up candidates doesn't pay for the meanings of entries that never get displayed.
+ *
+ * Only used when [ca.fuwafuwa.gaku.GAKU_PREF_BINARY_DICTIONARY] is on, see [JmDatabaseHelper.getEntrySource].
+ *
+ * Layout, all big-endian:
+ *  - header: magic, version, entry count, max id
+ *  - id table: int[max id + 1] holding the offset of each entry's record from the start of the records, or -1
+ *  - records, sorted by kanji: id, primary entry flag (1 byte), rank, POS mask, null mask (1 byte, a bit per string
+ *    field), the end of each string field as an offset from the start of the record, then the string fields as UTF-8.
+ *    A field starts where the one before it ends, so any field is found without reading the others.
+ */
+class JmBinaryDictionary private constructor(private val buffer: ByteBuffer,
+                                             val entryCount: Int,
+                                             private val maxId: Int) : IEntrySource
+{
+    private val recordsStart = HEADER_SIZE + (maxId + 1) * 4
+
+    override fun getEntries(ids: Collection<Int>): List<EntryOptimized>
+    {
+        val entries = ArrayList<EntryOptimized>(ids.size)
+
+        for (id in ids)
+        {
+            if (id < 0 || id > maxId) continue
+
+            val offset = buffer.getInt(HEADER_SIZE + id * 4)
+            if (offset >= 0) entries.add(BinaryEntry(recordsStart + offset))
+        }
+
+        return entries
+    }
+
+    /**
+     * Visits the id, kanji, readings and dictionary of every entry, in kanji order
+     */
+    fun forEachKey(action: (id: Int, kanji: String?, readings: String?, dictionary: String?) -> Unit)
+    {
+        var position = recordsStart
+
+        for (i in 0 until entryCount)
+        {
+            action(buffer.getInt(position),
+                   readString(position, KANJI),
+                   readString(position, READINGS),
+                   readString(position, DICTIONARY))
+            position = fieldEnd(position, FIELD_COUNT - 1)
+        }
+    }
+
+    private fun fieldStart(record: Int, field: Int): Int
+    {
+        return if (field == 0) record + RECORD_STRINGS_OFFSET else fieldEnd(record, field - 1)
+    }
+
+    private fun fieldEnd(record: Int, field: Int): Int
+    {
+        return record + buffer.getInt(record + RECORD_FIELD_ENDS_OFFSET + field * 4)
+    }
+
+    private fun readString(record: Int, field: Int): String?
+    {
+        if ((buffer.get(record + RECORD_NULL_MASK_OFFSET).toInt() and (1 shl field)) != 0) return null
+
+        // Decoded straight from the mapped file, through a view so the shared buffer's position is left alone
+        val bytes = buffer.duplicate()
+        bytes.limit(fieldEnd(record, field))
+        bytes.position(fieldStart(record, field))
+        return StandardCharsets.UTF_8.decode(bytes).toString()
+    }
+
+    /**
+     * An entry backed by its record in the mapped file. Fields are decoded on first access and then kept through
+     * the regular setters, so later reads behave exactly like an entry loaded from SQLite. Entries can be shared
+     * between threads, racing decodes just decode the same field twice.
+     */
+    private inner class BinaryEntry(private val record: Int) : EntryOptimized()
+    {
+        // Bits of the fields decoded so far
+        private val decoded = AtomicInteger(0)
+
+        override fun getId(): Int = buffer.getInt(record)
+
+        override fun isPrimaryEntry(): Boolean = buffer.get(record + 4).toInt() != 0
+
+        override fun getRank(): Int = buffer.getInt(record + 5)
+
+        override fun getPosMask(): Int = buffer.getInt(record + 9)
+
+        override fun getKanji(): String?
+        {
+            decode(KANJI) { setKanji(it) }
+            return super.getKanji()
+        }
+
+        override fun getReadings(): String
+        {
+            decode(READINGS) { setReadings(it) }
+            return super.getReadings()
+        }
+
+        override fun getMeanings(): String?
+        {
+            decode(MEANINGS) { setMeanings(it) }
+            return super.getMeanings()
+        }
+
+        override fun getPos(): String
+        {
+            decode(POS) { setPos(it) }
+            return super.getPos()
+        }
+
+        override fun getPriorities(): String
+        {
+            decode(PRIORITIES) { setPriorities(it) }
+            return super.getPriorities()
+        }
+
+        override fun getDictionary(): String?
+        {
+            decode(DICTIONARY) { setDictionary(it) }
+            return super.getDictionary()
+        }
+
+        /**
+         * Decodes [field] and hands it to [set] if that hasn't been done yet. The field is only marked as decoded
+         * once it has been set, so other threads never see it as decoded but still missing.
+         */
+        private inline fun decode(field: Int, set: (String?) -> Unit)
+        {
+            val mask = 1 shl field
+            if ((decoded.get() and mask) != 0) return
+
+            set(readField(field))
+
+            // Another thread may be marking a different field at the same time, so retry instead of losing its bit
+            while (true)
+            {
+                val current = decoded.get()
+                if (decoded.compareAndSet(current, current or mask)) return
+            }
+        }
+
+        private fun readField(field: Int): String?
+        {
+            return readString(record, field)
+        }
+    }
+
+    companion object
+    {
+        private val TAG = JmBinaryDictionary::class.java.name
+
+        private const val MAGIC = 0x474b4a4d // "GKJM"
+        private const val VERSION = 4
+        private const val HEADER_SIZE = 16
+        private const val RECORD_NULL_MASK_OFFSET = 13
+        private const val RECORD_FIELD_ENDS_OFFSET = 14
+
+        private const val KANJI = 0
+        private const val READINGS = 1
+        private const val MEANINGS = 2
+        private const val POS = 3
+        private const val PRIORITIES = 4
+        private const val DICTIONARY = 5
+        private const val FIELD_COUNT = 6
+        private const val RECORD_STRINGS_OFFSET = RECORD_FIELD_ENDS_OFFSET + FIELD_COUNT * 4
+
+        @Volatile private var instance: JmBinaryDictionary? = null
+
+        /**
+         * @return The binary dictionary if it has been loaded, null otherwise
+         */
+        @JvmStatic fun getIfLoaded(): JmBinaryDictionary?
+        {
+            return instance
+        }
+
+        /**
+         * Maps the binary dictionary, writing it out from the SQLite database first if it doesn't exist yet or was
+         * written by an older version. Blocks, so this should only be called from a background thread.
+         *
+         * @return The binary dictionary, or null if it couldn't be loaded (lookups then stay on SQLite)
+         */
+        @Synchronized fun load(context: Context): JmBinaryDictionary?
+        {
+            instance?.let { return it }
+
+            val file = File(context.filesDir, JMDICT_BINARY_NAME)
+
+            try
+            {
+                if (file.exists())
+                {
+                    try
+                    {
+                        instance = open(file)
+                        return instance
+                    }
+                    catch (e: IOException)
+                    {
+                        // Left behind by an older version of the app, written out again below
+                        Log.w(TAG, "Replacing ${file.name}", e)
+                        file.delete()
+                    }
+                }
+
+                val startTime = System.currentTimeMillis()
+                val tempFile = File(context.filesDir, "$JMDICT_BINARY_NAME.tmp")
+                write(JmDatabaseHelper.instance(context), tempFile)
+                if (!tempFile.renameTo(file)) throw IOException("Unable to rename ${tempFile.name}")
+                Log.d(TAG, "JmBinaryDictionary write time: ${System.currentTimeMillis() - startTime}")
+
+                instance = open(file)
+            }
+            catch (e: Exception)
+            {
+                Log.e(TAG, "Failed to load JmBinaryDictionary", e)
+                file.delete()
+            }
+
+            return instance
+        }
+
+        /**
+         * Drops the binary dictionary and the index built from it, and deletes the file so the next load writes it out
+         * again, for when the SQLite database has been rebuilt. The old mapping is released once nothing refers to it.
+         */
+        @JvmStatic @Synchronized fun invalidate(context: Context)
+        {
+            instance = null
+            File(context.filesDir, JMDICT_BINARY_NAME).delete()
+            JmIndex.invalidate()
+        }
+
+        @Throws(IOException::class)
+        @JvmStatic fun open(file: File): JmBinaryDictionary
+        {
+            val buffer = RandomAccessFile(file, "r").use { it.channel.map(FileChannel.MapMode.READ_ONLY, 0, it.length()) }
+
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            {
+                throw IOException("${file.name} is not a binary dictionary of version $VERSION")
+            }
+
+            val entryCount = buffer.getInt(8)
+            val maxId = buffer.getInt(12)
+            if (maxId < 0 || HEADER_SIZE + (maxId + 1).toLong() * 4 > buffer.capacity())
+            {
+                throw IOException("${file.name} is truncated")
+            }
+
+            return JmBinaryDictionary(buffer, entryCount, maxId)
+        }
+
+        /**
+         * Writes every EntryOptimized row of [dbHelper] to [file] in the binary dictionary format
+         */
+        @Throws(Exception::class)
+        @JvmStatic fun write(dbHelper: IDatabaseHelper, file: File)
+        {
+            val dao = dbHelper.getDbDao<EntryOptimized>(EntryOptimized::class.java)
+            val maxId = dao.queryRawValue("SELECT MAX(id) FROM ${dao.tableName}").toInt()
+            val idOffsets = IntArray(maxId + 1) { -1 }
+            val recordsStart = HEADER_SIZE + (maxId + 1) * 4
+            var entryCount = 0
+
+            RandomAccessFile(file, "rw").use { raf ->
+                raf.setLength(0)
+                val channel = raf.channel
+
+                // Records go first so their offsets are known by the time the id table is written
+                channel.position(recordsStart.toLong())
+                val output = DataOutputStream(BufferedOutputStream(Channels.newOutputStream(channel)))
+
+                val query = "SELECT id, primaryEntry, rank, posMask, kanji, readings, meanings, pos, priorities, dictionary FROM ${dao.tableName} ORDER BY kanji, id"
+                dao.queryRaw(query).use { results ->
+                    for (columns in results)
+                    {
+                        val fields = Array(FIELD_COUNT) { columns[4 + it]?.toByteArray(StandardCharsets.UTF_8) }
+                        var nullMask = 0
+                        fields.forEachIndexed { field, bytes -> if (bytes == null) nullMask = nullMask or (1 shl field) }
+
+                        idOffsets[columns[0].toInt()] = output.size()
+                        output.writeInt(columns[0].toInt())
+                        output.writeByte(if (columns[1] == "0" || columns[1] == null) 0 else 1)
+                        output.writeInt(columns[2]?.toInt() ?: 0)
+                        output.writeInt(columns[3]?.toInt() ?: 0)
+                        output.writeByte(nullMask)
+
+                        var fieldEnd = RECORD_STRINGS_OFFSET
+                        for (bytes in fields)
+                        {
+                            fieldEnd += bytes?.size ?: 0
+                            output.writeInt(fieldEnd)
+                        }
+                        for (bytes in fields)
+                        {
+                            if (bytes != null) output.write(bytes)
+                        }
+                        entryCount++
+                    }
+                }
+                output.flush()
+
+                val header = ByteBuffer.allocate(recordsStart)
+                header.putInt(MAGIC).putInt(VERSION).putInt(entryCount).putInt(maxId)
+                idOffsets.forEach { header.putInt(it) }
+                header.flip()
+
+                channel.position(0)
+                while (header.hasRemaining()) channel.write(header)
+            }
+        }
+    }
+}
@@ -1,17 +1,24 @@
 package ca.fuwafuwa.gaku.Database.JmDictDatabase;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.util.Log;
 
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.DatabaseTableConfig;
 import com.j256.ormlite.table.TableUtils;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 import ca.fuwafuwa.gaku.Constants;
 import ca.fuwafuwa.gaku.Database.DatabaseHelper;
+import ca.fuwafuwa.gaku.Database.ReadOnlyDatabase;
 import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.Entry;
 import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized;
 import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.Kanji;
@@ -39,13 +46,35 @@ import ca.fuwafuwa.gaku.GakuTools;
 /**
  * Created by 0xbad1d3a5 on 7/26/2016.
  */
-public class JmDatabaseHelper extends DatabaseHelper {
+public class JmDatabaseHelper extends DatabaseHelper implements IEntrySource {
 
     private static final String TAG = JmDatabaseHelper.class.getName();
 
     private static final String DATABASE_NAME = Constants.JMDICT_DATABASE_NAME;
     private static final int DATABASE_VERSION = 1;
 
+    private static final int[] ID_CHUNK_SIZES = { 1, 8, 64, 512 };
+
+    private static final String ENTRY_COLUMNS = "id, kanji, readings, meanings, pos, priorities, dictionary, primaryEntry, rank, posMask";
+
+    private static final ReadOnlyDatabase.RowMapper<EntryOptimized> ENTRY_MAPPER = new ReadOnlyDatabase.RowMapper<EntryOptimized>() {
+        @Override
+        public EntryOptimized map(Cursor cursor) {
+            EntryOptimized entry = new EntryOptimized();
+            entry.setId(cursor.getInt(0));
+            entry.setKanji(cursor.getString(1));
+            entry.setReadings(cursor.getString(2));
+            entry.setMeanings(cursor.getString(3));
+            entry.setPos(cursor.getString(4));
+            entry.setPriorities(cursor.getString(5));
+            entry.setDictionary(cursor.getString(6));
+            entry.setPrimaryEntry(cursor.getInt(7) != 0);
+            entry.setRank(cursor.getInt(8));
+            entry.setPosMask(cursor.getInt(9));
+            return entry;
+        }
+    };
+
     private static JmDatabaseHelper instance;
 
     private Context mContext;
@@ -79,15 +108,105 @@ public class JmDatabaseHelper extends DatabaseHelper {
         throw new NotImplementedException();
     }
 
+    /**
+     * Adds the index on kanji to databases built before it existed. Databases generated now already have it, but on
+     * an older one this builds it over the whole table, so it must only be called from a background thread.
+     */
+    public void createKanjiIndexIfMissing() {
+        try {
+            getWritableDatabase().execSQL(KanjiPrefixQuery.getCreateIndexSql(DatabaseTableConfig.extractTableName(null, EntryOptimized.class)));
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Failed to create the kanji index", e);
+        }
+    }
+
     public void deleteDatabase(){
+        ReadOnlyDatabase.close(getDatabaseName());
         mContext.deleteDatabase(String.format("%s/%s", mContext.getFilesDir().getAbsolutePath(), DATABASE_NAME));
     }
 
     public <T> Dao<T, Integer> getDbDao(Class clazz) throws SQLException {
         return getDao(clazz);
     }
-}
 
+    /**
+     * @return Whether lookups should use the memory-mapped JmBinaryDictionary instead of this database, see
+     * Constants.GAKU_PREF_BINARY_DICTIONARY
+     */
+    public boolean isBinaryDictionaryEnabled() {
+        return GakuTools.getPrefs(mContext).getBinaryDictionarySetting();
+    }
+
+    /**
+     * @return Where lookups fetch entries from: the binary dictionary if it is enabled and has been loaded, this
+     * database otherwise
+     */
+    public IEntrySource getEntrySource() {
+        if (isBinaryDictionaryEnabled()){
+            JmBinaryDictionary dictionary = JmBinaryDictionary.getIfLoaded();
+            if (dictionary != null){
+                return dictionary;
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public List<EntryOptimized> getEntries(Collection<Integer> ids) throws SQLException {
+        String table = getDbDao(EntryOptimized.class).getTableName();
+        List<EntryOptimized> entries = new ArrayList<>();
+        List<Integer> chunk = new ArrayList<>();
+
+        // Stay well below SQLite's limit on the number of terms in a single statement
+        for (Integer id : ids){
+            chunk.add(id);
+            if (chunk.size() == ID_CHUNK_SIZES[ID_CHUNK_SIZES.length - 1]){
+                entries.addAll(getEntriesInChunk(table, chunk));
+                chunk.clear();
+            }
+        }
+
+        if (!chunk.isEmpty()){
+            entries.addAll(getEntriesInChunk(table, chunk));
+        }
 
+        return entries;
+    }
+
+    /**
+     * @return Entries whose kanji starts with prefix
+     */
+    public List<EntryOptimized> getEntriesStartingWith(String prefix) throws SQLException {
+        String table = getDbDao(EntryOptimized.class).getTableName();
+
+        return getReadOnlyDatabase().query(
+                KanjiPrefixQuery.getSql(ENTRY_COLUMNS, table, prefix),
+                KanjiPrefixQuery.getArgs(prefix),
+                ENTRY_MAPPER);
+    }
 
+    private List<EntryOptimized> getEntriesInChunk(String table, List<Integer> chunk){
 
+        // Padding the chunk out to one of a few sizes, with an id that is already in it, keeps the number of distinct
+        // statements small enough that they stay prepared
+        int size = ID_CHUNK_SIZES[ID_CHUNK_SIZES.length - 1];
+        for (int chunkSize : ID_CHUNK_SIZES){
+            if (chunkSize >= chunk.size()){
+                size = chunkSize;
+                break;
+            }
+        }
+
+        String[] args = new String[size];
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < size; i++){
+            args[i] = Integer.toString(chunk.get(Math.min(i, chunk.size() - 1)));
+            placeholders.append(i == 0 ? "?" : ",?");
+        }
+
+        return getReadOnlyDatabase().query(
+                String.format("SELECT %s FROM %s WHERE id IN (%s)", ENTRY_COLUMNS, table, placeholders),
+                args,
+                ENTRY_MAPPER);
+    }
+}
@@ -0,0 +1,245 @@
+package ca.fuwafuwa.gaku.Database.JmDictDatabase
+
+import android.content.Context
+import android.util.Log
+import ca.fuwafuwa.gaku.DB_JMDICT_NAME
+import ca.fuwafuwa.gaku.Database.Index.DoubleArrayTrie
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized
+import ca.fuwafuwa.gaku.Deinflictor.DeinflectionOracle
+import ca.fuwafuwa.gaku.LangUtils
+
+/**
+ * In-memory index from [EntryOptimized.getKanji], and from each reading of JMdict entries, to the ids of the entries
+ * with that surface form or reading.
+ *
+ * Built once from the binary dictionary (or the EntryOptimized table if that is disabled or isn't available) so that lookups only touch the entries that actually match
+ * instead of every entry that starts with the same character. Surface forms and readings share one trie, so text
+ * written in kana finds the entries normally written with kanji in the same walk. Keys are stored as [toKey], and
+ * searched text is folded the same way before it is walked, so one walk covers every spelling variant that folds to
+ * the same key.
+ *
+ * @property postingStarts For key i, its entry ids are postings[postingStarts[i], postingStarts[i + 1])
+ */
+class JmIndex private constructor(private val trie: DoubleArrayTrie,
+                                  private val postingStarts: IntArray,
+                                  private val postings: IntArray) : DeinflectionOracle
+{
+    /**
+     * A surface form found by [commonPrefixSearch]
+     *
+     * @property length Number of characters of the searched text covered by the surface form
+     * @property entryIds Ids of the entries with that surface form
+     */
+    class PrefixMatch(val length: Int, val entryIds: IntArray)
+
+    /**
+     * @property matches Every surface form that is a prefix of the searched text, longest first
+     * @property reachableLength Length of the longest prefix of the searched text that is the start of some
+     * surface form. Anything past this point can never be part of a match, no matter how it is deinflected.
+     */
+    class PrefixSearchResult(val matches: List<PrefixMatch>, val reachableLength: Int)
+
+    /**
+     * @return Ids of the entries whose surface form or one of whose readings is exactly [word]
+     */
+    fun getEntryIds(word: CharSequence): IntArray
+    {
+        val key = trie.exactMatch(toKey(word))
+        if (key < 0) return EMPTY
+
+        return getPostings(key)
+    }
+
+    /**
+     * Walks text[offset, end) once, finding every surface form that is a prefix of it
+     */
+    fun commonPrefixSearch(text: CharSequence, offset: Int, end: Int = text.length): PrefixSearchResult
+    {
+        val searchKey = LangUtils.ToSearchKey(text, offset, end)
+        val trieMatches = ArrayList<DoubleArrayTrie.Match>()
+        val reachableLength = trie.commonPrefixSearch(searchKey.key, 0, searchKey.key.length, trieMatches)
+
+        // Lengths in the key are mapped back to lengths in the text, which differ when chars were merged or dropped
+        return PrefixSearchResult(trieMatches.map { PrefixMatch(searchKey.getSourceLength(it.length), getPostings(it.value)) },
+                                  searchKey.getSourceLength(reachableLength))
+    }
+
+    override fun getReachableLength(word: CharSequence): Int
+    {
+        val searchKey = LangUtils.ToSearchKey(word)
+        return searchKey.getSourceLength(trie.prefixLength(searchKey.key))
+    }
+
+    private fun getPostings(key: Int): IntArray
+    {
+        return postings.copyOfRange(postingStarts[key], postingStarts[key + 1])
+    }
+
+    companion object
+    {
+        private val TAG = JmIndex::class.java.name
+        private val EMPTY = IntArray(0)
+
+        private const val READING_SEPARATOR = ", "
+
+        @Volatile private var instance: JmIndex? = null
+        private var loading = false
+
+        // Bumped by invalidate, so a build that started before it throws its index away
+        private var generation = 0
+
+        /**
+         * @return The index if it has finished loading, null otherwise
+         */
+        fun getIfLoaded(): JmIndex?
+        {
+            return instance
+        }
+
+        /**
+         * Starts building the index on a background thread if it hasn't been built yet
+         */
+        @JvmStatic @Synchronized fun preload(context: Context)
+        {
+            if (instance != null || loading) return
+            loading = true
+
+            val appContext = context.applicationContext
+            val buildGeneration = generation
+            val thread = Thread {
+                try
+                {
+                    val dbHelper = JmDatabaseHelper.instance(appContext)
+
+                    // Until this is done, prefix queries on an older database scan the whole table
+                    dbHelper.createKanjiIndexIfMissing()
+
+                    val startTime = System.currentTimeMillis()
+                    val ids = ArrayList<Int>()
+                    val keys = ArrayList<String>()
+                    val dictionary = if (dbHelper.isBinaryDictionaryEnabled) JmBinaryDictionary.load(appContext) else null
+                    if (dictionary != null) readKeys(dictionary, ids, keys) else readKeys(dbHelper, ids, keys)
+                    val index = build(ids, keys)
+                    Log.d(TAG, "JmIndex load time: ${System.currentTimeMillis() - startTime}")
+
+                    synchronized(this)
+                    {
+                        if (buildGeneration != generation)
+                        {
+                            Log.d(TAG, "Dictionary was rebuilt while building JmIndex, discarding it")
+                            return@Thread
+                        }
+                        instance = index
+                    }
+                }
+                catch (e: Exception)
+                {
+                    Log.e(TAG, "Failed to build JmIndex", e)
+                }
+                finally
+                {
+                    synchronized(this) { loading = false }
+                }
+            }
+            thread.name = "JmIndexLoader"
+            thread.isDaemon = true
+            thread.start()
+        }
+
+        /**
+         * Drops the index, for when the dictionary has been rebuilt. The next [preload] builds it again.
+         */
+        @JvmStatic @Synchronized fun invalidate()
+        {
+            instance = null
+            generation++
+        }
+
+        /**
+         * @return How text is compared against the index, see [LangUtils.ToSearchKey]
+         */
+        @JvmStatic fun toKey(text: CharSequence): String
+        {
+            return LangUtils.ToSearchKey(text).key
+        }
+
+        /**
+         * @return Every key an entry can be found by: its surface form and, for JMdict entries, each of its readings
+         */
+        @JvmStatic fun getKeys(kanji: String?, readings: String?, dictionary: String?): List<String>
+        {
+            val keys = ArrayList<String>()
+            if (kanji != null) keys.add(toKey(kanji))
+
+            // KANJIDIC readings are on/kun display strings rather than words
+            if (DB_JMDICT_NAME == dictionary && !readings.isNullOrEmpty())
+            {
+                for (reading in readings.split(READING_SEPARATOR))
+                {
+                    val key = toKey(reading)
+                    if (key.isNotEmpty() && !keys.contains(key)) keys.add(key)
+                }
+            }
+
+            return keys
+        }
+
+        private fun readKeys(dbHelper: JmDatabaseHelper, ids: MutableList<Int>, keys: MutableList<String>)
+        {
+            val dao = dbHelper.getDbDao<EntryOptimized>(EntryOptimized::class.java)
+
+            dbHelper.readOnlyDatabase.query("SELECT id, kanji, readings, dictionary FROM ${dao.tableName}", null) { cursor ->
+                val id = cursor.getInt(0)
+                for (key in getKeys(cursor.getString(1), cursor.getString(2), cursor.getString(3)))
+                {
+                    ids.add(id)
+                    keys.add(key)
+                }
+            }
+        }
+
+        private fun readKeys(dictionary: JmBinaryDictionary, ids: MutableList<Int>, keys: MutableList<String>)
+        {
+            dictionary.forEachKey { id, kanji, readings, dictionaryName ->
+                for (key in getKeys(kanji, readings, dictionaryName))
+                {
+                    ids.add(id)
+                    keys.add(key)
+                }
+            }
+        }
+
+        /**
+         * Builds the index from parallel lists of entry ids and the keys they can be found by
+         */
+        fun build(ids: List<Int>, keys: List<String>): JmIndex
+        {
+            // Ordering ids within a key puts an entry found by both its surface form and a reading next to itself
+            val order = keys.indices.sortedWith(Comparator { a, b ->
+                val compare = keys[a].compareTo(keys[b])
+                if (compare != 0) compare else ids[a].compareTo(ids[b])
+            })
+
+            val uniqueKeys = ArrayList<String>()
+            val postingStarts = ArrayList<Int>()
+            val postings = ArrayList<Int>(order.size)
+
+            for (row in order)
+            {
+                if (uniqueKeys.isEmpty() || uniqueKeys.last() != keys[row])
+                {
+                    uniqueKeys.add(keys[row])
+                    postingStarts.add(postings.size)
+                }
+                else if (postings.last() == ids[row])
+                {
+                    continue
+                }
+                postings.add(ids[row])
+            }
+            postingStarts.add(postings.size)
+
+            return JmIndex(DoubleArrayTrie.build(uniqueKeys), postingStarts.toIntArray(), postings.toIntArray())
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ca.fuwafuwa.gaku.Database.JmDictDatabase
+
+/**
+ * Finds the entries whose kanji starts with a prefix as a range scan over the kanji index.
+ *
+ * SQLite only uses an index for LIKE when LIKE and the column agree on case sensitivity, which they don't for the
+ * default case sensitive column, so "kanji LIKE 'x%'" scans the whole table.
+ * kanji >= prefix AND kanji < (prefix with its last code point incremented) selects the same rows and is a seek on
+ * the index. Text is compared as UTF-8 bytes, which sort in code point order, so the range holds for any prefix.
+ */
+object KanjiPrefixQuery
+{
+    /**
+     * Name of the index on EntryOptimized.kanji, the same as OrmLite gives it
+     */
+    const val INDEX_NAME = "entryoptimized_kanji_idx"
+
+    private const val MAX_CODE_POINT = 0x10FFFF
+
+    /**
+     * For databases built before the kanji column was indexed
+     */
+    @JvmStatic fun getCreateIndexSql(table: String): String
+    {
+        return "CREATE INDEX IF NOT EXISTS $INDEX_NAME ON $table (kanji)"
+    }
+
+    /**
+     * @return Query selecting columns of the entries in table whose kanji starts with prefix, to be run with [getArgs]
+     */
+    @JvmStatic fun getSql(columns: String, table: String, prefix: String): String
+    {
+        return if (getUpperBound(prefix) != null)
+        {
+            "SELECT $columns FROM $table WHERE kanji >= ? AND kanji < ?"
+        }
+        else
+        {
+            "SELECT $columns FROM $table WHERE kanji >= ?"
+        }
+    }
+
+    @JvmStatic fun getArgs(prefix: String): Array<String>
+    {
+        val upperBound = getUpperBound(prefix) ?: return arrayOf(prefix)
+        return arrayOf(prefix, upperBound)
+    }
+
+    /**
+     * @return The smallest string greater than every string starting with prefix, or null if there is none
+     */
+    @JvmStatic fun getUpperBound(prefix: String): String?
+    {
+        var end = prefix.length
+
+        // Code points that can't be incremented are dropped, which widens the range to the prefix before them
+        while (end > 0)
+        {
+            val codePoint = prefix.codePointBefore(end)
+            val start = end - Character.charCount(codePoint)
+
+            if (codePoint < MAX_CODE_POINT)
+            {
+                // Surrogates can't appear on their own in valid text, so the next code point after them is U+E000
+                val next = if (codePoint + 1 in Character.MIN_SURROGATE.code..Character.MAX_SURROGATE.code) Character.MAX_SURROGATE.code + 1 else codePoint + 1
+                return prefix.substring(0, start) + String(intArrayOf(next), 0, 1)
+            }
+
+            end = start
+        }
+
+        return null
+    }
+}
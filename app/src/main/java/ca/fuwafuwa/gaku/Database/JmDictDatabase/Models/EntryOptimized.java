@@ -14,8 +14,9 @@ public class EntryOptimized implements Comparable<EntryOptimized> {
     @DatabaseField(generatedId = true)
     private Integer id;
 
+    // Indexed so prefix searches are a range scan, see KanjiPrefixQuery
     @Expose
-    @DatabaseField
+    @DatabaseField(index = true)
     private String kanji;
 
     @Expose
@@ -42,11 +43,29 @@ public class EntryOptimized implements Comparable<EntryOptimized> {
     @DatabaseField(dataType = DataType.BOOLEAN)
     private boolean primaryEntry = false;
 
+    // Packed sort key from EntryRank, lower ranks are shown first
+    @Expose
+    @DatabaseField
+    private int rank;
+
+    // Parts of speech as PosMask bits, matching the word types of the deinflection rules
+    @Expose
+    @DatabaseField
+    private int posMask;
+
     private boolean onlyKana = false;
 
     public EntryOptimized(){
     }
 
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
     public String getKanji() {
         return kanji;
     }
@@ -132,13 +151,33 @@ public class EntryOptimized implements Comparable<EntryOptimized> {
         this.dictionary = dictionary;
     }
 
+    public int getRank()
+    {
+        return rank;
+    }
+
+    public void setRank(int rank)
+    {
+        this.rank = rank;
+    }
+
+    public int getPosMask()
+    {
+        return posMask;
+    }
+
+    public void setPosMask(int posMask)
+    {
+        this.posMask = posMask;
+    }
+
     // Sort by kanji length for results
     @Override
     public int compareTo(EntryOptimized another) {
-        if (this.kanji.length() > another.getKanji().length()){
+        if (getKanji().length() > another.getKanji().length()){
             return -1;
         }
-        else if (this.kanji.length() == another.getKanji().length()){
+        else if (getKanji().length() == another.getKanji().length()){
             return 0;
         }
         else {
@@ -0,0 +1,41 @@
+package ca.fuwafuwa.gaku.Database.JmDictDatabase
+
+/**
+ * Parts of speech of an entry as a bitmask using the same bits as the word types of the rules in deinflect.dat, so
+ * whether a deinflected word can be an entry is just `deinflectionInfo.type and entry.posMask`.
+ *
+ * An entry gets a bit when any of its senses has a part of speech starting with the tag, e.g. v5k and v5r-i both set
+ * [GODAN] and vs-i and vs-s both set [SURU].
+ */
+object PosMask
+{
+    const val ICHIDAN = 1
+    const val GODAN = 2
+    const val ADJECTIVE_I = 4
+    const val KURU = 8
+    const val SURU = 16
+
+    private val TAGS = arrayOf(
+            "v1" to ICHIDAN,
+            "v5" to GODAN,
+            "adj-i" to ADJECTIVE_I,
+            "vk" to KURU,
+            "vs-" to SURU)
+
+    /**
+     * @param pos Parts of speech of each sense, as stored in [ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized.getPos]
+     */
+    @JvmStatic fun compute(pos: String?): Int
+    {
+        if (pos.isNullOrEmpty()) return 0
+
+        var mask = 0
+
+        for ((tag, bit) in TAGS)
+        {
+            if (pos.contains(tag)) mask = mask or bit
+        }
+
+        return mask
+    }
+}
@@ -0,0 +1,280 @@
+package ca.fuwafuwa.gaku.Database.KanjiDict2Database
+
+import android.content.Context
+import android.util.Log
+import ca.fuwafuwa.gaku.Database.KanjiDict2Database.Models.CharacterOptimized
+import ca.fuwafuwa.gaku.KANJIDICT_TABLE_NAME
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+
+/**
+ * Read-only copy of the CharacterOptimized table, memory-mapped and indexed by code point so looking up a kanji is
+ * a single array read instead of a query.
+ *
+ * Layout, all big-endian:
+ *  - header: magic, version, number of overflow characters
+ *  - dense table: int[DENSE_COUNT] holding, for each code point from DENSE_START, the offset of its record from the
+ *    start of the records, or -1
+ *  - overflow table: (code point, offset) pairs for characters outside the dense range, sorted by code point. These
+ *    are the extension blocks and compatibility ideographs, read into a map when the table is opened.
+ *  - records: number of reading/meaning groups, then onyomi, kunyomi and meaning of each group, each as its length
+ *    in chars (-1 for null) followed by its UTF-16 chars
+ */
+class KanjiTable private constructor(private val buffer: ByteBuffer, private val overflow: Map<Int, Int>)
+{
+    private val recordsStart = HEADER_SIZE + DENSE_COUNT * 4 + overflow.size * 8
+
+    /**
+     * @return One CharacterOptimized per reading/meaning group of the character, empty if it isn't in KANJIDIC
+     */
+    fun get(codePoint: Int): List<CharacterOptimized>
+    {
+        val offset = if (codePoint >= DENSE_START && codePoint < DENSE_START + DENSE_COUNT)
+        {
+            buffer.getInt(HEADER_SIZE + (codePoint - DENSE_START) * 4)
+        }
+        else
+        {
+            overflow[codePoint] ?: -1
+        }
+
+        if (offset < 0) return emptyList()
+
+        val kanji = String(intArrayOf(codePoint), 0, 1)
+        var position = recordsStart + offset
+        val groupCount = buffer.getInt(position)
+        position += 4
+
+        val characters = ArrayList<CharacterOptimized>(groupCount)
+        for (i in 0 until groupCount)
+        {
+            val character = CharacterOptimized()
+            character.kanji = kanji
+            character.onyomi = readString(position)
+            position = skipString(position)
+            character.kunyomi = readString(position)
+            position = skipString(position)
+            character.meaning = readString(position)
+            position = skipString(position)
+            characters.add(character)
+        }
+
+        return characters
+    }
+
+    private fun skipString(position: Int): Int
+    {
+        return position + 4 + maxOf(buffer.getInt(position), 0) * 2
+    }
+
+    private fun readString(position: Int): String?
+    {
+        val length = buffer.getInt(position)
+        if (length < 0) return null
+
+        val chars = CharArray(length)
+        for (i in 0 until length)
+        {
+            chars[i] = buffer.getChar(position + 4 + i * 2)
+        }
+
+        return String(chars)
+    }
+
+    companion object
+    {
+        private val TAG = KanjiTable::class.java.name
+
+        private const val MAGIC = 0x474b4b54 // "GKKT"
+        private const val VERSION = 1
+        private const val HEADER_SIZE = 12
+
+        // CJK Unified Ideographs, where nearly all of KANJIDIC is
+        private const val DENSE_START = 0x4E00
+        private const val DENSE_COUNT = 0xA000 - DENSE_START
+
+        @Volatile private var instance: KanjiTable? = null
+        private var loading = false
+
+        // Set once a load has run, whether or not it found anything, so an empty KANJIDIC database isn't queried
+        // again on every search. Cleared by invalidate.
+        private var loadAttempted = false
+
+        /**
+         * @return The table if it has finished loading, null otherwise
+         */
+        fun getIfLoaded(): KanjiTable?
+        {
+            return instance
+        }
+
+        /**
+         * Starts loading the table on a background thread if it hasn't been loaded yet
+         */
+        @JvmStatic @Synchronized fun preload(context: Context)
+        {
+            if (instance != null || loading || loadAttempted) return
+            loading = true
+
+            val appContext = context.applicationContext
+            val thread = Thread {
+                try
+                {
+                    load(appContext)
+                }
+                finally
+                {
+                    synchronized(this) { loading = false }
+                }
+            }
+            thread.name = "KanjiTableLoader"
+            thread.isDaemon = true
+            thread.start()
+        }
+
+        /**
+         * Maps the table, writing it out from the KANJIDIC database first if it doesn't exist yet. Blocks, so this
+         * should only be called from a background thread.
+         *
+         * @return The table, or null if it couldn't be loaded or KANJIDIC hasn't been parsed yet. A failed load isn't
+         * retried until [invalidate] is called.
+         */
+        @Synchronized fun load(context: Context): KanjiTable?
+        {
+            if (instance != null || loadAttempted) return instance
+            loadAttempted = true
+
+            val file = File(context.filesDir, KANJIDICT_TABLE_NAME)
+
+            try
+            {
+                if (!file.exists())
+                {
+                    val startTime = System.currentTimeMillis()
+                    val characters = Kd2DatabaseHelper.instance(context).getCharacters()
+
+                    // Nothing to write until KANJIDIC has been parsed, which invalidates the table
+                    if (characters.isEmpty()) return null
+
+                    val tempFile = File(context.filesDir, "$KANJIDICT_TABLE_NAME.tmp")
+                    write(characters, tempFile)
+                    if (!tempFile.renameTo(file)) throw IOException("Unable to rename ${tempFile.name}")
+                    Log.d(TAG, "KanjiTable write time: ${System.currentTimeMillis() - startTime}")
+                }
+
+                instance = open(file)
+            }
+            catch (e: Exception)
+            {
+                Log.e(TAG, "Failed to load KanjiTable", e)
+                file.delete()
+            }
+
+            return instance
+        }
+
+        /**
+         * Drops the table so the next load writes it out again, for when the KANJIDIC database has been rebuilt
+         */
+        @JvmStatic @Synchronized fun invalidate(context: Context)
+        {
+            instance = null
+            loadAttempted = false
+            File(context.filesDir, KANJIDICT_TABLE_NAME).delete()
+        }
+
+        @JvmStatic @Throws(IOException::class)
+        fun open(file: File): KanjiTable
+        {
+            val buffer = RandomAccessFile(file, "r").use { it.channel.map(FileChannel.MapMode.READ_ONLY, 0, it.length()) }
+
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            {
+                throw IOException("${file.name} is not a kanji table of version $VERSION")
+            }
+
+            val overflowCount = buffer.getInt(8)
+            val overflowStart = HEADER_SIZE + DENSE_COUNT * 4
+            if (overflowCount < 0 || overflowStart + overflowCount.toLong() * 8 > buffer.capacity())
+            {
+                throw IOException("${file.name} is truncated")
+            }
+
+            val overflow = HashMap<Int, Int>(overflowCount * 2)
+            for (i in 0 until overflowCount)
+            {
+                overflow[buffer.getInt(overflowStart + i * 8)] = buffer.getInt(overflowStart + i * 8 + 4)
+            }
+
+            return KanjiTable(buffer, overflow)
+        }
+
+        /**
+         * Writes [characters] to [file] in the kanji table format. Groups of the same character keep their order.
+         */
+        @JvmStatic @Throws(IOException::class)
+        fun write(characters: List<CharacterOptimized>, file: File)
+        {
+            val groups = LinkedHashMap<Int, MutableList<CharacterOptimized>>()
+            for (character in characters)
+            {
+                val kanji = character.kanji
+                if (kanji.isNullOrEmpty()) continue
+
+                groups.getOrPut(kanji.codePointAt(0)) { ArrayList() }.add(character)
+            }
+
+            val dense = IntArray(DENSE_COUNT) { -1 }
+            val overflow = sortedMapOf<Int, Int>()
+            val overflowCount = groups.keys.count { it < DENSE_START || it >= DENSE_START + DENSE_COUNT }
+            val recordsStart = HEADER_SIZE + DENSE_COUNT * 4 + overflowCount * 8
+
+            RandomAccessFile(file, "rw").use { raf ->
+                raf.setLength(0)
+                val channel = raf.channel
+
+                // Records go first so their offsets are known by the time the tables are written
+                channel.position(recordsStart.toLong())
+                val output = DataOutputStream(BufferedOutputStream(Channels.newOutputStream(channel)))
+
+                for ((codePoint, characterGroups) in groups)
+                {
+                    if (codePoint >= DENSE_START && codePoint < DENSE_START + DENSE_COUNT)
+                    {
+                        dense[codePoint - DENSE_START] = output.size()
+                    }
+                    else
+                    {
+                        overflow[codePoint] = output.size()
+                    }
+
+                    output.writeInt(characterGroups.size)
+                    for (character in characterGroups)
+                    {
+                        for (value in arrayOf(character.onyomi, character.kunyomi, character.meaning))
+                        {
+                            output.writeInt(value?.length ?: -1)
+                            if (value != null) output.writeChars(value)
+                        }
+                    }
+                }
+                output.flush()
+
+                val header = ByteBuffer.allocate(recordsStart)
+                header.putInt(MAGIC).putInt(VERSION).putInt(overflowCount)
+                dense.forEach { header.putInt(it) }
+                overflow.forEach { (codePoint, offset) -> header.putInt(codePoint).putInt(offset) }
+                header.flip()
+
+                channel.position(0)
+                while (header.hasRemaining()) channel.write(header)
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package ca.fuwafuwa.gaku.Database.KanjiDict2Database;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
 import com.j256.ormlite.dao.Dao;
@@ -8,10 +9,12 @@ import com.j256.ormlite.support.ConnectionSource;
 import com.j256.ormlite.table.TableUtils;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 import ca.fuwafuwa.gaku.Constants;
 import ca.fuwafuwa.gaku.Database.DatabaseHelper;
-import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized;
+import ca.fuwafuwa.gaku.Database.ReadOnlyDatabase;
 import ca.fuwafuwa.gaku.Database.KanjiDict2Database.Models.CharacterOptimized;
 import ca.fuwafuwa.gaku.Exceptions.NotImplementedException;
 
@@ -21,7 +24,7 @@ import ca.fuwafuwa.gaku.Exceptions.NotImplementedException;
 
 public class Kd2DatabaseHelper extends DatabaseHelper {
 
-    private static final String DATABASE_NAME = Constants.JMDICT_DATABASE_NAME;
+    private static final String DATABASE_NAME = Constants.KANJIDICT_DATABASE_NAME;
     private static final int DATABASE_VERSION = 1;
 
     private static Kd2DatabaseHelper instance;
@@ -43,7 +46,7 @@ public class Kd2DatabaseHelper extends DatabaseHelper {
     @Override
     public void onCreate(SQLiteDatabase database, ConnectionSource connectionSource) {
         try {
-            TableUtils.createTable(connectionSource, EntryOptimized.class);
+            TableUtils.createTable(connectionSource, CharacterOptimized.class);
         }
         catch (SQLException e){
             e.printStackTrace();
@@ -57,13 +60,40 @@ public class Kd2DatabaseHelper extends DatabaseHelper {
 
     @Override
     public void deleteDatabase() {
-        //mContext.deleteDatabase(String.format("%s/%s", mContext.getFilesDir().getAbsolutePath(), DATABASE_NAME));
+        ReadOnlyDatabase.close(getDatabaseName());
+        mContext.deleteDatabase(String.format("%s/%s", mContext.getFilesDir().getAbsolutePath(), DATABASE_NAME));
     }
 
     @Override
     public <T> Dao<T, Integer> getDbDao(Class clazz) throws SQLException {
         return getDao(clazz);
     }
+
+    /**
+     * @return Every character in the order it was parsed, empty if KANJIDIC hasn't been parsed yet
+     */
+    public List<CharacterOptimized> getCharacters() throws SQLException {
+        ReadOnlyDatabase database = getReadOnlyDatabase();
+        if (!database.exists()){
+            return new ArrayList<>();
+        }
+
+        String table = getDbDao(CharacterOptimized.class).getTableName();
+        return database.query(
+                String.format("SELECT kanji, onyomi, kunyomi, meaning FROM %s ORDER BY id", table),
+                null,
+                new ReadOnlyDatabase.RowMapper<CharacterOptimized>() {
+                    @Override
+                    public CharacterOptimized map(Cursor cursor) {
+                        CharacterOptimized character = new CharacterOptimized();
+                        character.setKanji(cursor.getString(0));
+                        character.setOnyomi(cursor.getString(1));
+                        character.setKunyomi(cursor.getString(2));
+                        character.setMeaning(cursor.getString(3));
+                        return character;
+                    }
+                });
+    }
 }
 
 
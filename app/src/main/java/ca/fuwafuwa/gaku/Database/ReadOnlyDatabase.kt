@@ -0,0 +1,206 @@
+package ca.fuwafuwa.gaku.Database
+
+import android.database.Cursor
+import android.database.sqlite.SQLiteDatabase
+import android.util.Log
+import java.io.File
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.TimeUnit
+
+/**
+ * Pool of read-only connections to one dictionary database, for lookups.
+ *
+ * The OrmLite helpers keep a single read-write connection, so every lookup waits for the one before it. Lookups here
+ * borrow one of several connections instead, each opened with OPEN_READONLY and tuned for reading: the file is
+ * memory-mapped, the page cache is larger than the default and prepared statements are kept per connection, so a
+ * query that only differs in its bound arguments is only compiled once per connection.
+ *
+ * Connections are opened as they are needed. Writes (parsing a dictionary) still go through the helpers, which must
+ * [close] the pool before deleting the file.
+ */
+class ReadOnlyDatabase private constructor(private val path: String, private val poolSize: Int)
+{
+    /**
+     * Maps the row the cursor is on to an object
+     */
+    fun interface RowMapper<T>
+    {
+        fun map(cursor: Cursor): T
+    }
+
+    /**
+     * @property statementCacheHitRatio Share of queries whose SQL had already been run on the connection they were
+     * given, and so was a prepared statement cache hit. SQLite's own page cache hits aren't exposed by Android.
+     */
+    class Stats(val queries: Long, val totalQueryNanos: Long, val statementCacheHitRatio: Double)
+    {
+        val averageQueryMillis: Double
+            get() = if (queries == 0L) 0.0 else totalQueryNanos / queries / 1e6
+
+        override fun toString(): String
+        {
+            return "$queries queries, ${"%.3f".format(averageQueryMillis)} ms average, ${"%.2f".format(statementCacheHitRatio)} statement cache hit ratio"
+        }
+    }
+
+    private class Connection(val database: SQLiteDatabase)
+    {
+        // Mirrors the connection's LRU statement cache, to tell whether a query will reuse a prepared statement
+        val preparedSql = object : LinkedHashMap<String, Boolean>(16, 0.75f, true)
+        {
+            override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Boolean>?): Boolean
+            {
+                return size > MAX_PREPARED_STATEMENTS
+            }
+        }
+    }
+
+    private val idleConnections = ArrayBlockingQueue<Connection>(poolSize)
+    private val openConnections = ArrayList<Connection>()
+    private var closed = false
+
+    private var queries = 0L
+    private var statementCacheHits = 0L
+    private var totalQueryNanos = 0L
+
+    fun exists(): Boolean
+    {
+        return File(path).exists()
+    }
+
+    /**
+     * Runs sql with args bound to its parameters on one of the pooled connections, blocking while they are all busy
+     *
+     * @return Every row of the result, mapped by mapper
+     */
+    fun <T> query(sql: String, args: Array<String>?, mapper: RowMapper<T>): List<T>
+    {
+        val connection = acquire()
+        val startTime = System.nanoTime()
+        val statementCacheHit = connection.preparedSql.put(sql, true) != null
+
+        try
+        {
+            val results = ArrayList<T>()
+            connection.database.rawQuery(sql, args).use { cursor ->
+                while (cursor.moveToNext())
+                {
+                    results.add(mapper.map(cursor))
+                }
+            }
+
+            return results
+        }
+        finally
+        {
+            release(connection)
+            record(System.nanoTime() - startTime, statementCacheHit)
+        }
+    }
+
+    @Synchronized fun getStats(): Stats
+    {
+        return Stats(queries, totalQueryNanos, if (queries == 0L) 0.0 else statementCacheHits.toDouble() / queries)
+    }
+
+    private fun acquire(): Connection
+    {
+        while (true)
+        {
+            idleConnections.poll()?.let { return it }
+
+            synchronized(this)
+            {
+                check(!closed) { "$path has been closed" }
+
+                if (openConnections.size < poolSize)
+                {
+                    val connection = Connection(open(path))
+                    openConnections.add(connection)
+                    return connection
+                }
+            }
+
+            // Nothing is released into a closed pool, so wait in slices and recheck instead of waiting forever
+            idleConnections.poll(ACQUIRE_WAIT_MILLIS, TimeUnit.MILLISECONDS)?.let { return it }
+        }
+    }
+
+    @Synchronized private fun release(connection: Connection)
+    {
+        if (closed)
+        {
+            connection.database.close()
+            return
+        }
+
+        idleConnections.offer(connection)
+    }
+
+    @Synchronized private fun record(queryNanos: Long, statementCacheHit: Boolean)
+    {
+        queries++
+        totalQueryNanos += queryNanos
+        if (statementCacheHit) statementCacheHits++
+
+        if (queries % STATS_LOG_INTERVAL == 0L)
+        {
+            Log.d(TAG, "${File(path).name}: ${getStats()}")
+        }
+    }
+
+    @Synchronized private fun closeConnections()
+    {
+        closed = true
+
+        // Connections that are in use are closed as they are released
+        val idle = ArrayList<Connection>()
+        idleConnections.drainTo(idle)
+        idle.forEach { it.database.close() }
+        openConnections.clear()
+    }
+
+    companion object
+    {
+        private val TAG = ReadOnlyDatabase::class.java.name
+
+        private const val MMAP_SIZE = 256L * 1024 * 1024
+        private const val CACHE_SIZE_KIB = 8 * 1024
+        private const val MAX_PREPARED_STATEMENTS = 64
+        private const val STATS_LOG_INTERVAL = 1000L
+        private const val ACQUIRE_WAIT_MILLIS = 100L
+
+        private val POOL_SIZE = Runtime.getRuntime().availableProcessors().coerceIn(2, 4)
+
+        private val instances = HashMap<String, ReadOnlyDatabase>()
+
+        /**
+         * @return The pool for the database at path, shared by everything reading it
+         */
+        @JvmStatic @Synchronized fun instance(path: String): ReadOnlyDatabase
+        {
+            return instances.getOrPut(path) { ReadOnlyDatabase(path, POOL_SIZE) }
+        }
+
+        /**
+         * Closes every connection to the database at path, so it can be deleted or rebuilt. The next [instance] opens
+         * new ones.
+         */
+        @JvmStatic @Synchronized fun close(path: String)
+        {
+            instances.remove(path)?.closeConnections()
+        }
+
+        private fun open(path: String): SQLiteDatabase
+        {
+            val database = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READONLY or SQLiteDatabase.NO_LOCALIZED_COLLATORS)
+            database.setMaxSqlCacheSize(MAX_PREPARED_STATEMENTS)
+
+            // Both return the new value as a row, so they have to be run as queries
+            database.rawQuery("PRAGMA mmap_size = $MMAP_SIZE", null).use { it.moveToFirst() }
+            database.rawQuery("PRAGMA cache_size = -$CACHE_SIZE_KIB", null).use { it.moveToFirst() }
+
+            return database
+        }
+    }
+}
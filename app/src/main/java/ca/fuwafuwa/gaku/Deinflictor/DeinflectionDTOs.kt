@@ -1,16 +1,6 @@
 package ca.fuwafuwa.gaku.Deinflictor
 
-/**
- * A RuleGroup is composed of multiple rules that share the same [DeinflectionRule.from] length
- *
- * @property rules List containing the rules in the RuleGroup
- * @property fromLength The [DeinflectionRule.from] length of the RuleGroup
- */
-class DeinflectionRuleGroup
-{
-    val rules: ArrayList<DeinflectionRule> = ArrayList()
-    var fromLength: Int = 0
-}
+import java.util.concurrent.atomic.AtomicReferenceArray
 
 /**
  * Data class to represent each rule in deinflect.dat
@@ -19,25 +9,87 @@ class DeinflectionRuleGroup
  * @property to The deinflected form
  * @property type Bitmask for determining whether to continue processing deinflection.
  * This is kinda Japanese black magic and I don't really understand it that well either.
- * @property reason Deinflection reason
+ * @property reasonId Index of the deinflection reason in deinflect.dat
  */
 data class DeinflectionRule(
         val from: String,
         val to: String,
         val type: Int,
-        val reason: String)
+        val reasonId: Int)
+
+/**
+ * Chain of deinflection reasons, most recent first, that is only turned into text when it is displayed.
+ *
+ * Chains are interned: extending the same chain with the same reason always gives back the same instance, so
+ * deinflecting a word doesn't allocate any reasons once the chains it needs have been seen.
+ *
+ * @property reasonId Index of the most recent reason, or -1 for the empty chain
+ * @property previous The rest of the chain
+ */
+class DeinflectionReason internal constructor(
+        private val reasonNames: List<String>,
+        val reasonId: Int,
+        val previous: DeinflectionReason?)
+{
+    private val extensions = AtomicReferenceArray<DeinflectionReason>(reasonNames.size)
+
+    /**
+     * @return The chain made of this chain preceded by [reasonId]
+     */
+    fun extend(reasonId: Int): DeinflectionReason
+    {
+        val extension = extensions.get(reasonId)
+        if (extension != null) return extension
+
+        extensions.compareAndSet(reasonId, null, DeinflectionReason(reasonNames, reasonId, this))
+        return extensions.get(reasonId)
+    }
+
+    /**
+     * Example: "< past < negative"
+     */
+    override fun toString(): String
+    {
+        val sb = StringBuilder()
+
+        var reason: DeinflectionReason? = this
+        while (reason != null && reason.reasonId >= 0)
+        {
+            if (sb.isNotEmpty()) sb.append(" ")
+            sb.append("< ").append(reasonNames[reason.reasonId])
+            reason = reason.previous
+        }
+
+        return sb.toString()
+    }
+}
 
 /**
  * Class to represent a deinflected word
  *
  * @property word The deinflected word
  * @property type Bitmask for determining whether to continue processing deinflection
- * @property reason Deinflection reason
+ * @property reasonChain Deinflection reasons, null if the word wasn't deinflected
  */
 class DeinflectionInfo(
         var word: String,
         var type: Int,
-        var reason: String)
-
-
+        val reasonChain: DeinflectionReason?)
+{
+    private var renderedReason: String? = null
 
+    /**
+     * Deinflection reason, rendered the first time it is asked for
+     */
+    val reason: String
+        get()
+        {
+            var rendered = renderedReason
+            if (rendered == null)
+            {
+                rendered = reasonChain?.toString() ?: ""
+                renderedReason = rendered
+            }
+            return rendered
+        }
+}
@@ -0,0 +1,12 @@
+package ca.fuwafuwa.gaku.Deinflictor
+
+/**
+ * Lets the [Deinflector] know which words can still deinflect into a dictionary word
+ */
+interface DeinflectionOracle
+{
+    /**
+     * @return Length of the longest prefix of [word] that is also the start of some dictionary word
+     */
+    fun getReachableLength(word: CharSequence): Int
+}
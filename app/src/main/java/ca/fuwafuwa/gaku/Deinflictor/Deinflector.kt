@@ -1,28 +1,98 @@
 package ca.fuwafuwa.gaku.Deinflictor
 
 import android.content.Context
-import ca.fuwafuwa.gaku.LangUtils
+import android.util.Log
 import java.io.BufferedReader
+import java.util.TreeMap
 
-class Deinflector(context: Context) {
+/**
+ * Rule set from deinflect.dat. Immutable once constructed, so a single instance is shared by every lookup, see
+ * [Deinflector.instance].
+ */
+class Deinflector(reader: BufferedReader) {
 
-    private val _ruleGroups: ArrayList<DeinflectionRuleGroup> = ArrayList()
+    companion object
+    {
+        private val TAG = Deinflector::class.java.name
+
+        @Volatile private var sharedInstance: Deinflector? = null
+
+        /**
+         * @return The shared rule set, loading it on the calling thread if it hasn't been loaded yet
+         */
+        @JvmStatic fun instance(context: Context): Deinflector
+        {
+            sharedInstance?.let { return it }
+
+            synchronized(this)
+            {
+                sharedInstance?.let { return it }
+
+                val startTime = System.currentTimeMillis()
+                val deinflector = Deinflector(context.applicationContext)
+                Log.d(TAG, "Deinflector load time: ${System.currentTimeMillis() - startTime}")
+
+                sharedInstance = deinflector
+                return deinflector
+            }
+        }
+
+        /**
+         * Loads the shared rule set on a background thread if it hasn't been loaded yet
+         */
+        @JvmStatic fun preload(context: Context)
+        {
+            if (sharedInstance != null) return
+
+            val appContext = context.applicationContext
+            val thread = Thread { instance(appContext) }
+            thread.name = "DeinflectorLoader"
+            thread.isDaemon = true
+            thread.start()
+        }
+    }
+
+    /**
+     * Node of the rule trie, which is keyed on the reversed inflected forms of the rules
+     *
+     * @property chars Sorted characters leading to [children]
+     * @property rules Rules whose inflected form ends at this node, in the order they appear in deinflect.dat
+     */
+    private class SuffixNode
+    {
+        var chars: CharArray = CharArray(0)
+        var children: Array<SuffixNode?> = arrayOfNulls(0)
+        var rules: Array<DeinflectionRule> = emptyArray()
+
+        fun child(char: Char): SuffixNode?
+        {
+            val index = chars.binarySearch(char)
+            return if (index >= 0) children[index] else null
+        }
+    }
+
+    private val _suffixRoot = SuffixNode()
+    private var _maxFromLength = 0
+    private val _inflectionChars: HashSet<Char> = HashSet()
+    private val _noReason: DeinflectionReason
+
+    constructor(context: Context) : this(context.assets.open("deinflect.dat").bufferedReader(Charsets.UTF_8))
 
     init
     {
-        loadRules(context.assets.open("deinflect.dat").bufferedReader(Charsets.UTF_8))
+        val rules = ArrayList<DeinflectionRule>()
+        val ruleReasons = ArrayList<String>()
+        loadRules(reader, rules, ruleReasons)
+
+        _noReason = DeinflectionReason(ruleReasons, -1, null)
+        compileRules(rules)
     }
 
-    private fun loadRules(reader: BufferedReader)
+    private fun loadRules(reader: BufferedReader, rules: ArrayList<DeinflectionRule>, ruleReasons: ArrayList<String>)
     {
         // Skip header
         reader.readLine()
 
-        var ruleGroup = DeinflectionRuleGroup()
-        ruleGroup.fromLength = -1
-
-        var ruleReasons: ArrayList<String> = ArrayList()
-
         reader.forEachLine {
 
             var fields: List<String> = it.split("\t")
@@ -38,18 +108,70 @@ class Deinflector(context: Context) {
                 var rule = DeinflectionRule(fields[0].trim(),
                         fields[1].trim(),
                         fields[2].trim().toInt(),
-                        ruleReasons.get(fields[3].trim().toInt()))
+                        fields[3].trim().toInt())
 
-                // Group inflections of the same length together into the same RuleGroup
-                if (ruleGroup.fromLength != rule.from.length){
-                    ruleGroup = DeinflectionRuleGroup()
-                    ruleGroup.fromLength = rule.from.length
-                    _ruleGroups.add(ruleGroup)
-                }
+                rules.add(rule)
+                rule.from.forEach { char -> _inflectionChars.add(char) }
+            }
+        }
+    }
+
+    /**
+     * Builds the reversed-suffix trie, so that all the rules matching the tail of a word are found by walking the
+     * word backwards once instead of comparing its tail against every rule
+     */
+    private fun compileRules(rules: List<DeinflectionRule>)
+    {
+        val children = HashMap<SuffixNode, TreeMap<Char, SuffixNode>>()
+        val nodeRules = HashMap<SuffixNode, ArrayList<DeinflectionRule>>()
 
-                ruleGroup.rules.add(rule)
+        for (rule in rules)
+        {
+            var node = _suffixRoot
+            for (i in rule.from.length - 1 downTo 0)
+            {
+                node = children.getOrPut(node) { TreeMap() }.getOrPut(rule.from[i]) { SuffixNode() }
             }
+
+            nodeRules.getOrPut(node) { ArrayList() }.add(rule)
+            _maxFromLength = maxOf(_maxFromLength, rule.from.length)
+        }
+
+        for ((node, nodeChildren) in children)
+        {
+            node.chars = nodeChildren.keys.toCharArray()
+            node.children = nodeChildren.values.toTypedArray()
+        }
+
+        for ((node, rulesAtNode) in nodeRules)
+        {
+            node.rules = rulesAtNode.toTypedArray()
+        }
+    }
+
+    /**
+     * Deinflection only ever replaces the tail of a word, and only tails made up of characters that appear
+     * in the inflected side of some rule.
+     *
+     * @return Whether [char] can be removed by deinflection
+     */
+    fun isInflectionChar(char: Char): Boolean
+    {
+        return _inflectionChars.contains(char)
+    }
+
+    /**
+     * Further deinflections can only strip inflection characters off the end of [word], so it can only end up as a
+     * dictionary word if everything past the part the dictionary knows about is made of inflection characters
+     */
+    private fun canReachWord(word: String, oracle: DeinflectionOracle): Boolean
+    {
+        for (i in oracle.getReachableLength(word) until word.length)
+        {
+            if (!_inflectionChars.contains(word[i])) return false
         }
+
+        return true
     }
 
     /**
@@ -73,44 +195,56 @@ class Deinflector(context: Context) {
      * - "< negative"
      *
      * Chain is: ["食べない", "食べる"]
+     *
+     * @param oracle If given, deinflections that can no longer turn into a dictionary word are dropped instead of
+     * being expanded further
      */
-    fun getPotentialDeinflections(word: String): List<DeinflectionInfo> {
+    fun getPotentialDeinflections(word: String, oracle: DeinflectionOracle? = null): List<DeinflectionInfo> {
 
         var text: String = word //LangUtils.ConvertKanatanaToHiragana(word)
 
         // Chain of inflections encountered
         var deinfWordChain = ArrayList<DeinflectionInfo>()
-        deinfWordChain.add(DeinflectionInfo(text, 0xFF, ""))
+        deinfWordChain.add(DeinflectionInfo(text, 0xFF, _noReason))
 
         // Map of possible deinflections to its deinfWordList index
         var prevSeenDeinfWords = HashMap<String, Int>()
         prevSeenDeinfWords[text] = 0
 
         var currWordChainIndex = 0
+        val matchedTails = arrayOfNulls<SuffixNode>(_maxFromLength + 1)
 
         do
         {
             var currDeinflectionInfo: DeinflectionInfo = deinfWordChain.get(currWordChainIndex)
             var currWord: String = currDeinflectionInfo.word
 
-            for (ruleGroup in _ruleGroups)
+            // Nodes of the rule trie matching the tail of the word, by length of the tail
+            var matchedTailLength = 0
+            var node: SuffixNode? = _suffixRoot
+            while (matchedTailLength < currWord.length)
             {
-                // Only process RuleGroup if inflected word is longer than the group
-                if (ruleGroup.fromLength > currWord.length) continue
+                node = node!!.child(currWord[currWord.length - matchedTailLength - 1])
+                if (node == null) break
 
-                // Get the last X characters of word so that wordTail is the same length as the RuleGroup
-                var wordTail: String = currWord.substring(currWord.length - ruleGroup.fromLength)
+                matchedTails[++matchedTailLength] = node
+            }
 
-                for (rule in ruleGroup.rules)
+            // Longest inflections first, same as the order of deinflect.dat
+            for (tailLength in matchedTailLength downTo 1)
+            {
+                for (rule in matchedTails[tailLength]!!.rules)
                 {
-                    // Only process rule if wordTail matches a valid inflection rule
                     // Only process rule if previous word in deinflection chain allows for such a transformation (type does not mask out)
-                    var shouldProcessRule = (currDeinflectionInfo.type and rule.type != 0) && (wordTail == rule.from)
-                    if (!shouldProcessRule) continue
+                    if ((currDeinflectionInfo.type and rule.type) == 0) continue
 
                     // Inflected words must be at least 2 characters in length
-                    var newWord: String = currWord.substring(0, currWord.length - rule.from.length) + rule.to
-                    if (newWord.length <= 1) continue
+                    val stemLength = currWord.length - tailLength
+                    if (stemLength + rule.to.length <= 1) continue
+
+                    var newWord: String = StringBuilder(stemLength + rule.to.length).append(currWord, 0, stemLength).append(rule.to).toString()
+
+                    if (oracle != null && !canReachWord(newWord, oracle)) continue
 
                     // We've seen this deinflection before under a different rule, update type
                     var prevSeenWordIndex: Int? = prevSeenDeinfWords.get(newWord)
@@ -125,7 +259,7 @@ class Deinflector(context: Context) {
                     var newDeinflectedWord = DeinflectionInfo(
                             newWord,
                             rule.type shr 8,
-                            if (currDeinflectionInfo.reason.isNotEmpty()) "< ${rule.reason} ${currDeinflectionInfo.reason}" else "< ${rule.reason}"
+                            currDeinflectionInfo.reasonChain!!.extend(rule.reasonId)
                     )
                     prevSeenDeinfWords[newWord] = deinfWordChain.size
                     deinfWordChain.add(newDeinflectedWord)
@@ -136,6 +270,3 @@ class Deinflector(context: Context) {
         return deinfWordChain
     }
 }
-
-
-
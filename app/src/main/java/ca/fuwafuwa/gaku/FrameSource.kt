@@ -0,0 +1,169 @@
+package ca.fuwafuwa.gaku
+
+import android.media.Image
+import android.media.ImageReader
+import android.os.Handler
+import android.os.HandlerThread
+import android.util.Log
+import com.google.common.util.concurrent.Futures
+import com.google.common.util.concurrent.ListenableFuture
+import com.google.common.util.concurrent.SettableFuture
+
+/**
+ * Keeps the newest frame of the screen capture, as the ImageReader delivers it.
+ *
+ * Frames arrive through an OnImageAvailableListener on a thread of its own, so nothing polls the reader and a caller
+ * waiting for [getFrameAfter] wakes up as soon as the frame it needs has been composed. Only the newest frame is held,
+ * older ones go back to the reader straight away.
+ *
+ * Timestamps are System.nanoTime() when a frame arrived, so callers can compare them with when they changed the screen.
+ */
+class FrameSource
+{
+    /**
+     * Reads what it needs out of a frame. The frame is only valid until read returns.
+     */
+    fun interface FrameReader<T>
+    {
+        fun read(image: Image): T
+    }
+
+    private class Waiter(val timestampNanos: Long, val future: SettableFuture<Long>)
+
+    private val lock = Object()
+    private val thread = HandlerThread("FrameSource")
+    private val handler: Handler
+
+    private var imageReader: ImageReader? = null
+    private var latestImage: Image? = null
+    private var latestTimestampNanos = 0L
+    private val waiters = ArrayList<Waiter>()
+
+    private val listener = ImageReader.OnImageAvailableListener { reader -> onImageAvailable(reader) }
+
+    init
+    {
+        thread.start()
+        handler = Handler(thread.looper)
+    }
+
+    /**
+     * Starts taking frames from reader, instead of the reader attached before it
+     */
+    fun attach(reader: ImageReader)
+    {
+        detach()
+
+        synchronized(lock)
+        {
+            imageReader = reader
+        }
+        reader.setOnImageAvailableListener(listener, handler)
+    }
+
+    /**
+     * Stops taking frames and gives back the frame held, which has to happen before the reader is closed
+     */
+    fun detach()
+    {
+        synchronized(lock)
+        {
+            imageReader?.setOnImageAvailableListener(null, null)
+            imageReader = null
+
+            latestImage?.close()
+            latestImage = null
+        }
+    }
+
+    /**
+     * @return Future of the timestamp of the first frame that arrives after timestampNanos, done already if the newest
+     * frame did. Never completes if no frame arrives, so callers should wait with a timeout.
+     */
+    fun getFrameAfter(timestampNanos: Long): ListenableFuture<Long>
+    {
+        synchronized(lock)
+        {
+            if (latestImage != null && latestTimestampNanos > timestampNanos)
+            {
+                return Futures.immediateFuture(latestTimestampNanos)
+            }
+
+            val future = SettableFuture.create<Long>()
+            waiters.add(Waiter(timestampNanos, future))
+            return future
+        }
+    }
+
+    /**
+     * Runs frameReader on the newest frame, while holding on to it
+     *
+     * @return What frameReader returned, or null if there is no frame yet
+     */
+    fun <T> readLatest(frameReader: FrameReader<T>): T?
+    {
+        synchronized(lock)
+        {
+            val image = latestImage ?: return null
+            return frameReader.read(image)
+        }
+    }
+
+    /**
+     * Detaches and stops the thread frames arrive on. Anyone still waiting is cancelled.
+     */
+    fun quit()
+    {
+        detach()
+
+        synchronized(lock)
+        {
+            waiters.forEach { it.future.cancel(false) }
+            waiters.clear()
+        }
+        thread.quitSafely()
+    }
+
+    private fun onImageAvailable(reader: ImageReader)
+    {
+        val image = try
+        {
+            reader.acquireLatestImage()
+        }
+        catch (e: IllegalStateException)
+        {
+            // The reader was closed or every buffer is acquired, the next frame will bring it up to date
+            Log.w(TAG, "Couldn't acquire frame", e)
+            null
+        } ?: return
+
+        synchronized(lock)
+        {
+            if (reader !== imageReader)
+            {
+                image.close()
+                return
+            }
+
+            latestImage?.close()
+            latestImage = image
+            latestTimestampNanos = System.nanoTime()
+
+            val iterator = waiters.iterator()
+            while (iterator.hasNext())
+            {
+                val waiter = iterator.next()
+                if (latestTimestampNanos > waiter.timestampNanos || waiter.future.isCancelled)
+                {
+                    waiter.future.set(latestTimestampNanos)
+                    iterator.remove()
+                }
+            }
+        }
+    }
+
+    companion object
+    {
+        private val TAG = FrameSource::class.java.name
+    }
+}
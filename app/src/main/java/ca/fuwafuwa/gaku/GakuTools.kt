@@ -33,7 +33,8 @@ enum class TextDirection(val value: Int) {
 data class Prefs(val textDirectionSetting: TextDirection,
                  val imageFilterSetting: Boolean,
                  val instantModeSetting: Boolean,
-                 val showHideSetting: Boolean);
+                 val showHideSetting: Boolean,
+                 val binaryDictionarySetting: Boolean);
 
 // NOTE: The defValue here should match the defValue of the BroadcastReceivers, otherwise
 // they will be out of sync the first time.
@@ -45,7 +46,8 @@ fun getPrefs(context: Context): Prefs
             TextDirection.valueOf(prefs.getString(GAKU_PREF_TEXT_DIRECTION, TextDirection.AUTO.toString()).toString()),
             prefs.getBoolean(GAKU_PREF_IMAGE_FILTER, true),
             prefs.getBoolean(GAKU_PREF_INSTANT_MODE, true),
-            prefs.getBoolean(GAKU_PREF_SHOW_HIDE, true))
+            prefs.getBoolean(GAKU_PREF_SHOW_HIDE, true),
+            prefs.getBoolean(GAKU_PREF_BINARY_DICTIONARY, true))
 }
 
 fun toJson(obj: Any): String
@@ -104,6 +106,7 @@ fun setupGakuDatabasesAndFiles(context: Context)
     try {
         val filesAndPaths = hashMapOf(
                 JMDICT_DATABASE_NAME to context.filesDir.absolutePath,
+                KANJIDICT_DATABASE_NAME to context.filesDir.absolutePath,
                 TESS_DATA_NAME to "${context.filesDir.absolutePath}/$TESS_FOLDER_NAME")
 
         if (shouldResetData(filesAndPaths))
@@ -154,7 +157,7 @@ fun copyFilesIfNotExists(context: Context, filesAndPaths: Map<String, String>)
 
         if (File(filePath).exists())
         {
-            return
+            continue
         }
 
         createDirIfNotExists(path)
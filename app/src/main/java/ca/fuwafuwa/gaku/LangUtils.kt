@@ -2,6 +2,23 @@ package ca.fuwafuwa.gaku
 
 class LangUtils {
 
+    /**
+     * Text folded by ToSearchKey
+     *
+     * @property key The folded text
+     * @property sourceOffsets For each char of key, its offset in the text it was folded from, plus the length of that text
+     */
+    class SearchKey(val key: String, private val sourceOffsets: IntArray)
+    {
+        /**
+         * @return Number of chars of the original text that the first keyLength chars of key were folded from
+         */
+        fun getSourceLength(keyLength: Int): Int
+        {
+            return sourceOffsets[keyLength]
+        }
+    }
+
     companion object {
 
         private val KanaHalf: IntArray = intArrayOf(
@@ -25,6 +42,10 @@ class LangUtils {
                 0x3071, 0x3074, 0x3077, 0x307A, 0x307D
         )
 
+        private val PunctuationHalf: IntArray = intArrayOf(
+                0x3002, 0x300C, 0x300D, 0x3001, 0x30FB
+        )
+
         fun IsHiragana(char: Char) : Boolean
         {
             return Character.UnicodeBlock.of(char) == Character.UnicodeBlock.HIRAGANA
@@ -101,6 +122,114 @@ class LangUtils {
             return result.toString()
         }
 
+        /**
+         * Full-width katakana to hiragana for a single char, like ConvertKanatanaToHiragana but never changes the length of
+         * the text it's applied to
+         */
+        fun ConvertKatakanaToHiragana(char: Char): Char
+        {
+            return if ((char.code >= 0x30A1) && (char.code <= 0x30F3)) (char.code - 0x60).toChar() else char
+        }
+
+        /**
+         * Folds text into the form dictionary keys are compared in, so spellings that OCR output mixes up find the same
+         * entries. Applied the same way to dictionary keys and to searched text:
+         *  - full-width and half-width katakana become hiragana, half-width (semi-)voiced marks are merged into the kana
+         *    before them, and the half-width long vowel mark becomes ー
+         *  - other half-width forms and full-width ASCII become their regular forms
+         *  - ～ and 〜 are dropped
+         *  - iteration marks (々, ゝ, ゞ, ヽ, ヾ) become the char they repeat
+         *
+         * Folding only ever merges or drops chars, so each char of the key comes from exactly one place in the text.
+         */
+        fun ToSearchKey(text: CharSequence, start: Int = 0, end: Int = text.length): SearchKey
+        {
+            val key = StringBuilder(end - start)
+            val sourceOffsets = IntArray(end - start + 1)
+            var i = start
+
+            while (i < end)
+            {
+                val sourceOffset = i - start
+                val ordCurr = text[i++].code
+                var folded = ordCurr
+
+                // Half-width katakana, merging in a (semi-)voiced mark following it
+                if ((ordCurr >= 0xFF66) && (ordCurr <= 0xFF9D))
+                {
+                    folded = KanaHalf[ordCurr - 0xFF66]
+
+                    val ordNext = if (i < end) text[i].code else 0
+                    if (ordNext == 0xFF9E && ordCurr >= 0xFF73 && ordCurr <= 0xFF8E && KanaVoiced[ordCurr - 0xFF73] < 0xFF00)
+                    {
+                        folded = KanaVoiced[ordCurr - 0xFF73]
+                        i++
+                    }
+                    else if (ordNext == 0xFF9F && ordCurr >= 0xFF8A && ordCurr <= 0xFF8E)
+                    {
+                        folded = KanaSemiVoiced[ordCurr - 0xFF8A]
+                        i++
+                    }
+                }
+                // Half-width punctuation
+                else if ((ordCurr >= 0xFF61) && (ordCurr <= 0xFF65))
+                {
+                    folded = PunctuationHalf[ordCurr - 0xFF61]
+                }
+                // Japanese ~, stretches sounds without changing the word
+                else if (ordCurr == 0xFF5E || ordCurr == 0x301C)
+                {
+                    continue
+                }
+                // Full-width ASCII
+                else if ((ordCurr >= 0xFF01) && (ordCurr <= 0xFF5D))
+                {
+                    folded = ordCurr - 0xFEE0
+                }
+                // Iteration marks repeat the char before them, kana ones as unvoiced (ゝ, ヽ) or voiced (ゞ, ヾ)
+                else if (key.isNotEmpty() && (ordCurr == 0x3005 || ordCurr == 0x309D || ordCurr == 0x309E || ordCurr == 0x30FD || ordCurr == 0x30FE))
+                {
+                    val ordPrev = key[key.length - 1].code
+                    folded = when (ordCurr)
+                    {
+                        0x3005 -> if (Character.isSurrogate(ordPrev.toChar())) ordCurr else ordPrev
+                        0x309D, 0x30FD -> UnvoiceHiragana(ordPrev)
+                        else -> VoiceHiragana(UnvoiceHiragana(ordPrev))
+                    }
+                }
+
+                sourceOffsets[key.length] = sourceOffset
+                key.append(ConvertKatakanaToHiragana(folded.toChar()))
+            }
+
+            sourceOffsets[key.length] = end - start
+            return SearchKey(key.toString(), sourceOffsets.copyOf(key.length + 1))
+        }
+
+        private fun VoiceHiragana(ord: Int): Int
+        {
+            return when
+            {
+                (ord >= 0x304B) && (ord <= 0x3061) && (ord - 0x304B) % 2 == 0 -> ord + 1 // か-ち
+                (ord >= 0x3064) && (ord <= 0x3068) && (ord - 0x3064) % 2 == 0 -> ord + 1 // つ-と
+                (ord >= 0x306F) && (ord <= 0x307B) && (ord - 0x306F) % 3 == 0 -> ord + 1 // は-ほ
+                ord == 0x3046 -> 0x3094 // う
+                else -> ord
+            }
+        }
+
+        private fun UnvoiceHiragana(ord: Int): Int
+        {
+            return when
+            {
+                (ord >= 0x304C) && (ord <= 0x3062) && (ord - 0x304C) % 2 == 0 -> ord - 1 // が-ぢ
+                (ord >= 0x3065) && (ord <= 0x3069) && (ord - 0x3065) % 2 == 0 -> ord - 1 // づ-ど
+                (ord >= 0x3070) && (ord <= 0x307D) && (ord - 0x3070) % 3 != 2 -> ord - 1 - (ord - 0x3070) % 3 // ば-ぽ
+                ord == 0x3094 -> 0x3046 // ゔ
+                else -> ord
+            }
+        }
+
         fun ConvertIntToCircledNum(num: Int): String
         {
             var circledNum: String = "($num)"
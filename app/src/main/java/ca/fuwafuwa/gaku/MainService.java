@@ -11,7 +11,6 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.res.Configuration;
-import android.graphics.Bitmap;
 import android.graphics.PixelFormat;
 import android.graphics.Point;
 import android.hardware.display.DisplayManager;
@@ -31,7 +30,13 @@ import android.view.Display;
 import android.view.WindowManager;
 import android.widget.Toast;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.JmIndex;
+import ca.fuwafuwa.gaku.Deinflictor.Deinflector;
 import ca.fuwafuwa.gaku.Interfaces.Stoppable;
+import ca.fuwafuwa.gaku.Ocr.BoxParams;
+import ca.fuwafuwa.gaku.Ocr.ScreenCrop;
 import ca.fuwafuwa.gaku.Windows.Window;
 import ca.fuwafuwa.gaku.Windows.WindowCoordinator;
 
@@ -122,6 +127,7 @@ public class MainService extends Service implements Stoppable {
                         }
                         mMediaProjection.unregisterCallback(MediaProjectionStopCallback.this);
                         mMediaProjection = null;
+                        mFrameSource.detach();
                         mImageReader.close();
                     }
                 }
@@ -134,8 +140,11 @@ public class MainService extends Service implements Stoppable {
     private static final int VIRTUAL_DISPLAY_FLAGS = DisplayManager.VIRTUAL_DISPLAY_FLAG_OWN_CONTENT_ONLY
             | DisplayManager.VIRTUAL_DISPLAY_FLAG_PUBLIC;
     private static final int NOTIFICATION_ID = 1;
+    private static final long BITMAP_POOL_MAX_BYTES = 16 * 1024 * 1024;
 
     private final Object mScreenshotLock = new Object();
+    private final BitmapPool mBitmapPool = new BitmapPool(BITMAP_POOL_MAX_BYTES);
+    private FrameSource mFrameSource;
 
     private IntentFilter mIntentFilter = new IntentFilter(Intent.ACTION_SCREEN_OFF);
     private ScreenOffReceiver mScreenOffReceiver = new ScreenOffReceiver();
@@ -177,6 +186,11 @@ public class MainService extends Service implements Stoppable {
 
         mMediaProjectionManager = (MediaProjectionManager) getSystemService(MEDIA_PROJECTION_SERVICE);
         mHandler = new MainServiceHandler(this, mWindowCoordinator);
+        mFrameSource = new FrameSource();
+
+        // Build the dictionary index and load the deinflection rules in the background so the first lookup doesn't have to wait for them
+        JmIndex.preload(this);
+        Deinflector.preload(this);
 
         // Set preferences for ratings
         SharedPreferences prefs = getSharedPreferences(Constants.GAKU_PREF_FILE, Context.MODE_PRIVATE);
@@ -245,6 +259,11 @@ public class MainService extends Service implements Stoppable {
         mWindowCoordinator = null;
         isGakuRunning = false;
 
+        mFrameSource.quit();
+
+        Log.d(TAG, "Bitmap pool: " + mBitmapPool.getStats());
+        mBitmapPool.clear();
+
         Log.d(TAG, String.format("MAINSERVICE: %s DESTROYED", System.identityHashCode(this)));
         super.onDestroy();
     }
@@ -284,54 +303,40 @@ public class MainService extends Service implements Stoppable {
         return mHandler;
     }
 
-    public Bitmap getScreenshotBitmap() {
-        synchronized (mScreenshotLock) {
-            if (mImageReader == null) {
-                return null;
-            }
-
-            try {
-                // Try to get the latest image
-                Image image = mImageReader.acquireLatestImage();
-                if (image == null) {
-                    long startTime = System.nanoTime();
-                    while (image == null && System.nanoTime() < startTime + 2000000000) {
-                        try {
-                            mScreenshotLock.wait(20);
-                        } catch (InterruptedException e) {
-                            return null;
-                        }
-                        if (mImageReader == null)
-                            return null;
-                        image = mImageReader.acquireLatestImage();
-                    }
-                }
+    /**
+     * Bitmaps and pixel arrays shared by the capture window, the OCR pipeline and the windows showing its results
+     */
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
 
-                if (image != null) {
-                    try {
-                        return convertImageToBitmap(image);
-                    } finally {
-                        image.close();
-                    }
+    /**
+     * Copies box out of the newest frame of the screen
+     *
+     * @return The pixels inside box, or null if there is no frame yet or box doesn't fit inside it
+     */
+    public ScreenCrop getScreenCrop(final BoxParams box) {
+        try {
+            return mFrameSource.readLatest(new FrameSource.FrameReader<ScreenCrop>() {
+                @Override
+                public ScreenCrop read(Image image) {
+                    Image.Plane plane = image.getPlanes()[0];
+                    return ScreenCrop.copyFrom(plane.getBuffer(), plane.getRowStride(), plane.getPixelStride(),
+                            image.getWidth(), image.getHeight(), box, mBitmapPool);
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "Error getting screenshot", e);
-            }
-            return null;
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "Error getting screenshot", e);
         }
+        return null;
     }
 
-    private Bitmap convertImageToBitmap(Image image) {
-        Image.Plane[] planes = image.getPlanes();
-        java.nio.ByteBuffer buffer = planes[0].getBuffer();
-        int pixelStride = planes[0].getPixelStride();
-        int rowStride = planes[0].getRowStride();
-        int rowPadding = rowStride - pixelStride * image.getWidth();
-
-        Bitmap bitmap = Bitmap.createBitmap(image.getWidth() + rowPadding / pixelStride, image.getHeight(),
-                Bitmap.Config.ARGB_8888);
-        bitmap.copyPixelsFromBuffer(buffer);
-        return bitmap;
+    /**
+     * @param timestampNanos A System.nanoTime() timestamp, like when the screen was last changed
+     * @return Future of the timestamp of the first frame of the screen after timestampNanos
+     */
+    public ListenableFuture<Long> getFrameAfter(long timestampNanos) {
+        return mFrameSource.getFrameAfter(timestampNanos);
     }
 
     private Notification getNotification() {
@@ -412,11 +417,13 @@ public class MainService extends Service implements Stoppable {
             if (mVirtualDisplay == null) {
                 mImageReader = ImageReader.newInstance(mRealDisplaySize.x, mRealDisplaySize.y, PixelFormat.RGBA_8888,
                         2);
+                mFrameSource.attach(mImageReader);
                 mVirtualDisplay = mMediaProjection.createVirtualDisplay(getClass().getName(), mRealDisplaySize.x,
                         mRealDisplaySize.y, mDensity, VIRTUAL_DISPLAY_FLAGS, mImageReader.getSurface(), null, mHandler);
             } else {
                 ImageReader newImageReader = ImageReader.newInstance(mRealDisplaySize.x, mRealDisplaySize.y,
                         PixelFormat.RGBA_8888, 2);
+                mFrameSource.attach(newImageReader);
                 mVirtualDisplay.resize(mRealDisplaySize.x, mRealDisplaySize.y, mDensity);
                 mVirtualDisplay.setSurface(newImageReader.getSurface());
                 if (mImageReader != null) {
@@ -434,6 +441,7 @@ public class MainService extends Service implements Stoppable {
                 mVirtualDisplay = null;
             }
             if (mImageReader != null) {
+                mFrameSource.detach();
                 mImageReader.close();
                 mImageReader = null;
             }
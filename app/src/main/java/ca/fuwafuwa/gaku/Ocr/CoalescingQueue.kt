@@ -0,0 +1,74 @@
+package ca.fuwafuwa.gaku.Ocr
+
+import java.util.ArrayDeque
+
+/**
+ * Bounded hand-off between two stages of the OCR pipeline. When it is full, offering an item drops the oldest one
+ * instead of blocking, so a stage that falls behind only ever works on the newest requests.
+ */
+class CoalescingQueue<T>(private val capacity: Int) {
+    private val lock = Object()
+    private val items = ArrayDeque<T>(capacity)
+    private var closed = false
+
+    init {
+        require(capacity > 0) { "capacity must be positive" }
+    }
+
+    /**
+     * @return The item dropped to make room for item, or null if nothing was dropped. If the queue has been closed,
+     * item itself is returned.
+     */
+    fun offer(item: T): T? {
+        synchronized(lock) {
+            if (closed) return item
+
+            val dropped = if (items.size == capacity) items.pollFirst() else null
+            items.addLast(item)
+            lock.notifyAll()
+            return dropped
+        }
+    }
+
+    /**
+     * Blocks until an item is available
+     *
+     * @return The oldest item, or null once the queue has been closed
+     */
+    @Throws(InterruptedException::class)
+    fun take(): T? {
+        synchronized(lock) {
+            while (items.isEmpty() && !closed) {
+                lock.wait()
+            }
+
+            return if (closed) null else items.pollFirst()
+        }
+    }
+
+    /**
+     * Removes every queued item
+     *
+     * @return The removed items, oldest first
+     */
+    fun drain(): List<T> {
+        synchronized(lock) {
+            val drained = ArrayList(items)
+            items.clear()
+            return drained
+        }
+    }
+
+    /**
+     * Wakes up every stage waiting in [take] and makes later offers fail
+     *
+     * @return Items that were still queued
+     */
+    fun close(): List<T> {
+        synchronized(lock) {
+            closed = true
+            lock.notifyAll()
+        }
+        return drain()
+    }
+}
@@ -6,6 +6,7 @@ import android.graphics.Bitmap
 import android.os.Message
 import android.util.Log
 import androidx.localbroadcastmanager.content.LocalBroadcastManager
+import com.google.android.gms.tasks.OnCompleteListener
 import com.google.android.gms.tasks.Tasks
 import com.google.mlkit.vision.common.InputImage
 import com.google.mlkit.vision.text.Text
@@ -14,31 +15,65 @@ import com.google.mlkit.vision.text.japanese.JapaneseTextRecognizerOptions
 import java.io.FileNotFoundException
 import java.io.FileOutputStream
 import java.util.concurrent.ExecutionException
-import java.util.concurrent.TimeUnit
 import java.util.concurrent.TimeoutException
+import java.util.concurrent.Executor
+import java.util.concurrent.atomic.AtomicInteger
 import ca.fuwafuwa.gaku.*
 import ca.fuwafuwa.gaku.Interfaces.Stoppable
 import ca.fuwafuwa.gaku.MainService
+import ca.fuwafuwa.gaku.Search.LookupLattice
 import ca.fuwafuwa.gaku.Windows.CaptureWindow
 import ca.fuwafuwa.gaku.Windows.Data.ChoiceCertainty
 import ca.fuwafuwa.gaku.Windows.Data.DisplayDataOcr
 import ca.fuwafuwa.gaku.Windows.Data.SquareCharOcr
 
-class OcrRunnable(context: Context, private var mCaptureWindow: CaptureWindow?) : Runnable, Stoppable {
+/**
+ * Runs OCR requests through a pipeline of stages, each on its own thread:
+ *
+ *  - capture and crop: on the capture window's own thread, see CaptureWindow.setCroppedScreenshot. The crop has to be
+ *    made there, it is also the preview and the frame it comes from is only valid while it is being copied.
+ *  - recognize: ML Kit text recognition, on the thread running this Runnable
+ *  - layout: orders the recognized symbols and places them on the screen
+ *  - correct: OCR corrections, then publishing the result
+ *  - prefetch: dictionary lookups of every character, on the LookupLattice thread
+ *
+ * Stages hand requests to each other through [CoalescingQueue]s holding a single request, so a newer request replaces
+ * one that is still waiting, and capturing the next box or laying out the last result overlap the recognition of the
+ * current one. Nothing is locked while recognition runs, so [runTess] never waits for it.
+ *
+ * Every request gets a token from [mGate], and a newer request or [cancel] makes every older token stale. Each stage
+ * drops stale requests, and the recognize stage stops waiting on a recognition as soon as it goes stale: ML Kit can't
+ * abort it, so it finishes in the background and its result is ignored. The next request is only submitted to ML Kit
+ * once it has, see [RecognitionGate].
+ */
+class OcrRunnable(context: Context, @Volatile private var mCaptureWindow: CaptureWindow?) : Runnable, Stoppable {
     private val mContext: MainService = context as MainService
-    private val mOcrLock = java.lang.Object()
     private val mSimilarChars = loadSimilarChars()
     private val mCommonMistakes = loadCommonMistakes()
     private var mTextRecognizer: com.google.mlkit.vision.text.TextRecognizer? = null
-    private var mThreadRunning = true
-    private var mOcrParams: OcrParams? = null
+    @Volatile private var mThreadRunning = true
     private var mIsReady = false
 
-    val isReadyForOcr: Boolean
-        get() = mOcrParams == null
-
-    init {
-        mOcrParams = null
+    private val mRecognizeQueue = CoalescingQueue<OcrJob>(1)
+    private val mLayoutQueue = CoalescingQueue<OcrJob>(1)
+    private val mCorrectQueue = CoalescingQueue<OcrJob>(1)
+    private val mJobsInFlight = AtomicInteger(0)
+    private val mGate = RecognitionGate()
+
+    /**
+     * An OCR request and what the stages have made of it so far
+     */
+    private class OcrJob(val params: OcrParams, val token: Long, val startTime: Long) {
+        var text: Text? = null
+        var displayData: DisplayDataOcr? = null
+
+        // Set once the result windows have the bitmap, which then stays theirs
+        var published = false
+
+        fun release() {
+            text = null
+            displayData = null
+        }
     }
 
     fun warmUp() {
@@ -98,58 +133,13 @@ class OcrRunnable(context: Context, private var mCaptureWindow: CaptureWindow?)
             return
         }
 
+        startStage("OcrLayout", mLayoutQueue) { layout(it) }
+        startStage("OcrCorrect", mCorrectQueue) { correct(it) }
+
         while (mThreadRunning) {
             try {
-                synchronized(mOcrLock) {
-                    if (mOcrParams == null) {
-                        mOcrLock.wait()
-                    }
-
-                    if (!mThreadRunning) return
-
-                    // Local capture to ensure thread safety
-                    val ocrParams = mOcrParams
-                    // Safely unwrap the recognizer (we know it's not null due to safeInitClient)
-                    val recognizer = mTextRecognizer
-
-                    if (ocrParams != null && recognizer != null) {
-                        Log.d(TAG, "Processing OCR with params $ocrParams")
-                        val startTime = System.currentTimeMillis()
-                        mCaptureWindow?.showLoadingAnimation()
-
-                        try {
-                            // 2. Prepare the InputImage
-                            val image = InputImage.fromBitmap(ocrParams.bitmap, 0)
-
-                            // 3. Process blocking (Tasks.await is safe here in background thread)
-                            val result = Tasks.await(recognizer.process(image), 10, TimeUnit.SECONDS)
-
-                            val displayData = getDisplayData(ocrParams, result)
-                            processDisplayData(displayData)
-
-                            if (displayData.text.isNotEmpty()) {
-                                val ocrTime = System.currentTimeMillis() - startTime
-                                sendOcrResultToContext(OcrResult(displayData, ocrTime))
-                            } else {
-                                sendToastToContext("No Characters Recognized.")
-                            }
-                        } catch (e: Exception) {
-                            when (e) {
-                                is ExecutionException, is InterruptedException, is TimeoutException -> {
-                                    Log.e(TAG, "OCR failed", e)
-                                    sendToastToContext("OCR Failed: ${e.message}")
-                                }
-                                else -> {
-                                    Log.e(TAG, "Unexpected OCR Error", e)
-                                    // Don't throw; just log so the thread keeps living
-                                }
-                            }
-                        } finally {
-                            mCaptureWindow?.stopLoadingAnimation(ocrParams.instantMode)
-                            mOcrParams = null
-                        }
-                    }
-                }
+                val job = mRecognizeQueue.take() ?: break
+                recognize(job)
             } catch (e: InterruptedException) {
                 Log.d(TAG, "OcrRunnable interrupted, shutting down.")
                 mThreadRunning = false
@@ -160,29 +150,182 @@ class OcrRunnable(context: Context, private var mCaptureWindow: CaptureWindow?)
             }
         }
 
+        closeQueues()
         Log.d(TAG, "THREAD STOPPED")
         mTextRecognizer?.close()
     }
 
     fun runTess(ocrParams: OcrParams) {
-        synchronized(mOcrLock) {
-            if (!mThreadRunning) return
-            mOcrParams = ocrParams
-            mOcrLock.notify()
-            Log.d(TAG, "NOTIFIED")
-        }
+        if (!mThreadRunning) return
+
+        val job = OcrJob(ocrParams, mGate.newToken(), System.currentTimeMillis())
+
+        // The capture window may release its bitmap while the request is still running
+        mContext.bitmapPool.retainBitmap(ocrParams.bitmap)
+
+        mJobsInFlight.incrementAndGet()
+        handOff(mRecognizeQueue, job)
+        Log.d(TAG, "QUEUED ${job.token}")
     }
 
+    /**
+     * Abandons every request made so far
+     */
     fun cancel() {
-        Log.d(TAG, "CANCELED (Not implemented for ML Kit)")
+        mGate.cancel()
+        Log.d(TAG, "CANCELED")
     }
 
     override fun stop() {
-        synchronized(mOcrLock) {
-            mThreadRunning = false
-            mCaptureWindow = null
-            mOcrParams = null
-            mOcrLock.notify()
+        mThreadRunning = false
+        mCaptureWindow = null
+        closeQueues()
+    }
+
+    private fun startStage(name: String, queue: CoalescingQueue<OcrJob>, stage: (OcrJob) -> Unit) {
+        val thread = Thread {
+            while (mThreadRunning) {
+                try {
+                    val job = queue.take() ?: break
+                    stage(job)
+                } catch (e: InterruptedException) {
+                    break
+                } catch (e: Exception) {
+                    Log.e(TAG, "Error in $name", e)
+                }
+            }
+        }
+        thread.name = name
+        thread.isDaemon = true
+        thread.start()
+    }
+
+    private fun recognize(job: OcrJob) {
+        val recognizer = mTextRecognizer ?: return finish(job)
+        if (isStale(job)) return finish(job)
+
+        Log.d(TAG, "Processing OCR with params ${job.params}")
+        mCaptureWindow?.showLoadingAnimation()
+
+        try {
+            // Held back while an abandoned recognition is still running, a newer request may replace this one meanwhile
+            if (!mGate.acquire(job.token, RECOGNITION_TIMEOUT_MILLIS)) {
+                Log.d(TAG, "Dropped stale OCR request ${job.token} before recognition")
+                return finish(job)
+            }
+
+            // An abandoned recognition keeps reading the bitmap, so it holds on to it until the task completes
+            val bitmap = job.params.bitmap
+            mContext.bitmapPool.retainBitmap(bitmap)
+            val task = try {
+                recognizer.process(InputImage.fromBitmap(bitmap, 0))
+            } catch (e: Exception) {
+                mContext.bitmapPool.releaseBitmap(bitmap)
+                mGate.release()
+                throw e
+            }
+            task.addOnCompleteListener(mDirectExecutor, OnCompleteListener {
+                mContext.bitmapPool.releaseBitmap(bitmap)
+                mGate.release()
+            })
+
+            if (!mGate.awaitResult(job.token, RECOGNITION_TIMEOUT_MILLIS)) {
+                Log.d(TAG, "Abandoned stale OCR request ${job.token}")
+                return finish(job)
+            }
+
+            job.text = Tasks.await(task)
+            handOff(mLayoutQueue, job)
+        } catch (e: Exception) {
+            when (e) {
+                is ExecutionException, is InterruptedException, is TimeoutException -> {
+                    Log.e(TAG, "OCR failed", e)
+                    sendToastToContext("OCR Failed: ${e.message}")
+                }
+                else -> {
+                    Log.e(TAG, "Unexpected OCR Error", e)
+                    // Don't throw; just log so the thread keeps living
+                }
+            }
+            finish(job)
+        }
+    }
+
+    private fun layout(job: OcrJob) {
+        if (isStale(job)) return finish(job)
+
+        try {
+            job.displayData = getDisplayData(job.params, job.text!!)
+        } catch (e: Exception) {
+            Log.e(TAG, "OCR layout failed", e)
+            return finish(job)
+        }
+
+        job.text = null
+        handOff(mCorrectQueue, job)
+    }
+
+    private fun correct(job: OcrJob) {
+        try {
+            if (isStale(job)) return
+            val displayData = job.displayData!!
+            processDisplayData(displayData)
+
+            // A newer request came in during correction
+            if (isStale(job)) return
+
+            if (displayData.text.isNotEmpty()) {
+                // Start looking up every character now, before the user gets to tap any of them
+                LookupLattice.build(mContext, displayData)
+
+                val ocrTime = System.currentTimeMillis() - job.startTime
+                sendOcrResultToContext(OcrResult(displayData, ocrTime))
+                job.published = true
+            } else {
+                sendToastToContext("No Characters Recognized.")
+            }
+        } finally {
+            finish(job)
+        }
+    }
+
+    /**
+     * Passes job to the next stage, dropping whichever request it replaces there
+     */
+    private fun handOff(queue: CoalescingQueue<OcrJob>, job: OcrJob) {
+        queue.offer(job)?.let {
+            Log.d(TAG, "Dropped OCR request superseded by a newer one: ${it.params}")
+            finish(it)
+        }
+    }
+
+    private fun isStale(job: OcrJob): Boolean {
+        return mGate.isStale(job.token)
+    }
+
+    /**
+     * Called once for every request, however it leaves the pipeline. The loading animation stops with the last one.
+     */
+    private fun finish(job: OcrJob) {
+        discard(job)
+        if (mJobsInFlight.decrementAndGet() == 0) {
+            mCaptureWindow?.stopLoadingAnimation(job.params.instantMode)
+        }
+    }
+
+    private fun closeQueues() {
+        for (queue in listOf(mRecognizeQueue, mLayoutQueue, mCorrectQueue)) {
+            queue.close().forEach {
+                discard(it)
+                mJobsInFlight.decrementAndGet()
+            }
+        }
+    }
+
+    private fun discard(job: OcrJob) {
+        job.release()
+        if (!job.published) {
+            mContext.bitmapPool.releaseBitmap(job.params.bitmap)
         }
     }
 
@@ -344,6 +487,11 @@ class OcrRunnable(context: Context, private var mCaptureWindow: CaptureWindow?)
     companion object {
         private val TAG = OcrRunnable::class.java.name
         const val ACTION_MODEL_READY = "ca.fuwafuwa.gaku.MODEL_READY"
+
+        private const val RECOGNITION_TIMEOUT_MILLIS = 10_000L
+
+        // Completion listeners only release the bitmap and the gate, so they can run on whichever thread completes the task
+        private val mDirectExecutor = Executor { it.run() }
     }
 }
 
@@ -0,0 +1,96 @@
+package ca.fuwafuwa.gaku.Ocr
+
+import java.util.concurrent.TimeoutException
+
+/**
+ * Request tokens for OCR, and the one recognition the recognizer is running.
+ *
+ * Every request gets a token from [newToken], and a newer token or [cancel] makes every older one stale. Waiting in
+ * [acquire] or [awaitResult] stops as soon as the request goes stale.
+ *
+ * ML Kit can't abort a recognition and runs them one after another, so a recognition submitted while an abandoned one
+ * is still running would only queue behind it inside ML Kit. [acquire] holds requests back until the recognizer is
+ * free instead, so requests that are superseded meanwhile never reach it and only the newest one is submitted. A new
+ * request therefore waits at most for the rest of the recognition it abandoned, never for older ones.
+ */
+class RecognitionGate {
+    private val lock = Object()
+    private var latestToken = 0L
+
+    // Whether a submitted recognition hasn't completed yet, abandoned or not
+    private var busy = false
+
+    /**
+     * @return The token of a new request, which makes every older one stale
+     */
+    fun newToken(): Long {
+        synchronized(lock) {
+            latestToken++
+            lock.notifyAll()
+            return latestToken
+        }
+    }
+
+    /**
+     * Makes every request made so far stale
+     */
+    fun cancel() {
+        newToken()
+    }
+
+    fun isStale(token: Long): Boolean {
+        synchronized(lock) {
+            return token != latestToken
+        }
+    }
+
+    /**
+     * Waits for the recognizer to be free and then takes it. Whoever takes it must submit a recognition and call
+     * [release] when it completes, or call [release] straight away if submitting fails.
+     *
+     * @return True if token can be submitted, false if it went stale first
+     */
+    @Throws(InterruptedException::class, TimeoutException::class)
+    fun acquire(token: Long, timeoutMillis: Long): Boolean {
+        synchronized(lock) {
+            waitWhileBusy(token, timeoutMillis, "Recognizer still busy after $timeoutMillis ms")
+            if (token != latestToken) return false
+
+            busy = true
+            return true
+        }
+    }
+
+    /**
+     * Waits for the recognition submitted for token to complete
+     *
+     * @return True if it completed, false if token went stale first. Its recognition then completes in the
+     * background and still calls [release].
+     */
+    @Throws(InterruptedException::class, TimeoutException::class)
+    fun awaitResult(token: Long, timeoutMillis: Long): Boolean {
+        synchronized(lock) {
+            waitWhileBusy(token, timeoutMillis, "Recognition took longer than $timeoutMillis ms")
+            return token == latestToken
+        }
+    }
+
+    /**
+     * Frees the recognizer once the recognition submitted after [acquire] has completed
+     */
+    fun release() {
+        synchronized(lock) {
+            busy = false
+            lock.notifyAll()
+        }
+    }
+
+    private fun waitWhileBusy(token: Long, timeoutMillis: Long, timeoutMessage: String) {
+        val deadline = System.currentTimeMillis() + timeoutMillis
+        while (busy && token == latestToken) {
+            val remaining = deadline - System.currentTimeMillis()
+            if (remaining <= 0) throw TimeoutException(timeoutMessage)
+            lock.wait(remaining)
+        }
+    }
+}
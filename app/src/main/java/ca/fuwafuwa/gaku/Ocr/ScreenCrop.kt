@@ -0,0 +1,98 @@
+package ca.fuwafuwa.gaku.Ocr
+
+import android.graphics.Bitmap
+import ca.fuwafuwa.gaku.BitmapPool
+import java.nio.ByteBuffer
+
+/**
+ * The pixels of one box of a screen frame, copied straight out of the frame's RGBA_8888 plane.
+ *
+ * Only the rows and columns inside the box are read, so a capture costs as much as the box is big rather than as
+ * much as the screen is. Pixels are kept as ARGB colors, the same as [Bitmap.getPixel] returns, packed without any
+ * row padding.
+ *
+ * When copied with a pool, pixels comes from it and may be longer than the box. It goes back with [release], after
+ * which the crop can't be used.
+ */
+class ScreenCrop(val box: BoxParams, val pixels: IntArray, private val pool: BitmapPool? = null)
+{
+    val width: Int
+        get() = box.width
+
+    val height: Int
+        get() = box.height
+
+    /**
+     * @return The ARGB color at x, y relative to the top left of the box
+     */
+    fun getPixel(x: Int, y: Int): Int
+    {
+        return pixels[y * width + x]
+    }
+
+    /**
+     * @return The crop without inset pixels on every side, as a new bitmap. If the crop was copied with a pool, the
+     * bitmap comes from it too and is owned by the caller.
+     */
+    fun toBitmap(inset: Int): Bitmap
+    {
+        val bitmapWidth = maxOf(width - 2 * inset, 1)
+        val bitmapHeight = maxOf(height - 2 * inset, 1)
+        val left = minOf(inset, width - bitmapWidth)
+        val top = minOf(inset, height - bitmapHeight)
+
+        val bitmap = pool?.acquireBitmap(bitmapWidth, bitmapHeight) ?: Bitmap.createBitmap(bitmapWidth, bitmapHeight, Bitmap.Config.ARGB_8888)
+        bitmap.setPixels(pixels, top * width + left, width, 0, 0, bitmapWidth, bitmapHeight)
+        return bitmap
+    }
+
+    fun release()
+    {
+        pool?.releasePixels(pixels)
+    }
+
+    companion object
+    {
+        private const val BYTES_PER_PIXEL = 4
+
+        /**
+         * Copies box out of a frame whose first plane is buffer
+         *
+         * @param rowStride Bytes between the start of one row of the frame and the next
+         * @param pixelStride Bytes between one pixel of a row and the next
+         * @param pool Where to take the pixel array from, or null to allocate one
+         * @return The crop, or null if box doesn't fit inside the frame
+         */
+        @JvmStatic @JvmOverloads fun copyFrom(buffer: ByteBuffer, rowStride: Int, pixelStride: Int, frameWidth: Int, frameHeight: Int, box: BoxParams, pool: BitmapPool? = null): ScreenCrop?
+        {
+            if (box.width <= 0 || box.height <= 0 || box.x < 0 || box.y < 0 || box.x + box.width > frameWidth || box.y + box.height > frameHeight)
+            {
+                return null
+            }
+
+            // Reading through a duplicate leaves the position of the frame's buffer alone
+            val frame = buffer.duplicate()
+            val row = ByteArray((box.width - 1) * pixelStride + BYTES_PER_PIXEL)
+            val pixels = pool?.acquirePixels(box.width * box.height) ?: IntArray(box.width * box.height)
+
+            for (y in 0 until box.height)
+            {
+                frame.position((box.y + y) * rowStride + box.x * pixelStride)
+                frame.get(row)
+
+                val rowStart = y * box.width
+                for (x in 0 until box.width)
+                {
+                    val i = x * pixelStride
+                    val r = row[i].toInt() and 0xFF
+                    val g = row[i + 1].toInt() and 0xFF
+                    val b = row[i + 2].toInt() and 0xFF
+                    val a = row[i + 3].toInt() and 0xFF
+                    pixels[rowStart + x] = (a shl 24) or (r shl 16) or (g shl 8) or b
+                }
+            }
+
+            return ScreenCrop(box, pixels, pool)
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package ca.fuwafuwa.gaku.Search
+
+import ca.fuwafuwa.gaku.DB_JMDICT_NAME
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.EntrySenses
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized
+import ca.fuwafuwa.gaku.LangUtils
+
+/**
+ * Formats the meanings of entries for the result windows, caching the text per entry id.
+ *
+ * [prefetch] is called on the search threads with the results they are about to hand out, so the windows normally
+ * only look up text that is already formatted instead of splitting meanings on the UI thread.
+ */
+object EntryFormatter
+{
+    private const val MAX_ENTRIES = 2048
+    private const val SUMMARY_SENSES = 3
+
+    /**
+     * @property full Every sense, numbered, with its parts of speech
+     * @property summary The first [SUMMARY_SENSES] senses of [full], marked when there are more
+     */
+    private class FormattedMeaning(val full: String, val summary: String)
+
+    // Guards cache, which reorders itself on every read
+    private val lock = Any()
+
+    private val cache = object : LinkedHashMap<Int, FormattedMeaning>(16, 0.75f, true)
+    {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Int, FormattedMeaning>?): Boolean
+        {
+            return size > MAX_ENTRIES
+        }
+    }
+
+    /**
+     * @return Every sense of the entry on one line, e.g. "① (n) meaning ② (v5k) meaning"
+     */
+    @JvmStatic fun getMeaning(entry: EntryOptimized): String
+    {
+        return getFormattedMeaning(entry).full
+    }
+
+    /**
+     * @return Like [getMeaning], but cut off after the first few senses
+     */
+    @JvmStatic fun getSummary(entry: EntryOptimized): String
+    {
+        return getFormattedMeaning(entry).summary
+    }
+
+    /**
+     * Formats the meanings of every result that isn't cached yet. Meant to be called off the UI thread.
+     */
+    @JvmStatic fun prefetch(results: List<JmSearchResult>)
+    {
+        for (result in results)
+        {
+            getFormattedMeaning(result.entry)
+        }
+    }
+
+    /**
+     * Drops all formatted text, for when the dictionary has been rebuilt
+     */
+    @JvmStatic fun invalidate()
+    {
+        synchronized(lock) { cache.clear() }
+    }
+
+    private fun getFormattedMeaning(entry: EntryOptimized): FormattedMeaning
+    {
+        val id = entry.id ?: return format(entry)
+
+        synchronized(lock) { cache[id] }?.let { return it }
+
+        // Formatting happens outside the lock, if two threads race for the same entry they just both format it
+        val formatted = format(entry)
+        synchronized(lock) { cache[id] = formatted }
+
+        return formatted
+    }
+
+    private fun format(entry: EntryOptimized): FormattedMeaning
+    {
+        val senses = EntrySenses(entry)
+        val showPos = DB_JMDICT_NAME == entry.dictionary
+        val sb = StringBuilder()
+        var summaryLength = -1
+
+        for (i in 0 until senses.size)
+        {
+            if (i == SUMMARY_SENSES)
+            {
+                summaryLength = sb.length
+            }
+            if (i != 0)
+            {
+                sb.append(" ")
+            }
+            sb.append(LangUtils.ConvertIntToCircledNum(i + 1))
+            sb.append(" ")
+            if (showPos && senses.hasPos(i))
+            {
+                sb.append("(")
+                senses.appendPos(sb, i)
+                sb.append(") ")
+            }
+            senses.appendMeaning(sb, i)
+        }
+
+        val full = sb.toString()
+        val summary = if (summaryLength < 0) full else "${full.substring(0, summaryLength)} [......]"
+
+        return FormattedMeaning(full, summary)
+    }
+}
@@ -0,0 +1,339 @@
+package ca.fuwafuwa.gaku.Search
+
+import android.content.Context
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.EntryRank
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.IEntrySource
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.JmDatabaseHelper
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.JmIndex
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized
+import ca.fuwafuwa.gaku.Database.KanjiDict2Database.KanjiTable
+import ca.fuwafuwa.gaku.Database.KanjiDict2Database.Models.CharacterOptimized
+import ca.fuwafuwa.gaku.DB_KANJIDICT_NAME
+import ca.fuwafuwa.gaku.Deinflictor.DeinflectionInfo
+import ca.fuwafuwa.gaku.Deinflictor.Deinflector
+import java.sql.SQLException
+import java.util.concurrent.CancellationException
+
+/**
+ * Finds and ranks the dictionary entries matching the start of a piece of text. Blocks on the database, so it must
+ * only be used off the UI thread.
+ */
+class JmMatcher(context: Context)
+{
+    companion object
+    {
+        @Volatile private var cacheOwner: Pair<JmIndex, KanjiTable?>? = null
+
+        /**
+         * @return character as the result windows display KANJIDIC entries, readings as "(onyomi) [kunyomi]"
+         */
+        @JvmStatic fun getKanjiEntry(character: CharacterOptimized): EntryOptimized
+        {
+            val entry = EntryOptimized()
+            entry.kanji = character.kanji
+            entry.readings = "(${character.onyomi ?: ""}) [${character.kunyomi ?: ""}]"
+            entry.meanings = character.meaning
+            entry.pos = ""
+            entry.dictionary = DB_KANJIDICT_NAME
+            entry.rank = EntryRank.compute(entry)
+            return entry
+        }
+    }
+
+    private val mJmDbHelper: JmDatabaseHelper = JmDatabaseHelper.instance(context)
+    private val mContext: Context = context.applicationContext
+    private val mDeinflector: Deinflector by lazy { Deinflector.instance(mContext) }
+
+    /**
+     * A prefix of the searched text along with its potential deinflections
+     */
+    private class Candidate(val word: String, val deinflections: List<DeinflectionInfo>)
+
+    /**
+     * A search that wasn't in the [SearchCache], waiting for its entries to be fetched
+     */
+    private class PendingSearch(val cacheKey: String, val candidates: List<Candidate>)
+    {
+        val offsets = ArrayList<Int>()
+    }
+
+    init
+    {
+        JmIndex.preload(context)
+        KanjiTable.preload(context)
+        Deinflector.preload(context)
+    }
+
+    /**
+     * Searches text starting at one offset, see [searchAll]
+     *
+     * @return Ranked entries matching text starting at textOffset
+     */
+    @Throws(SQLException::class, CancellationException::class)
+    fun search(text: String, textOffset: Int, entryCache: MutableMap<Int, EntryOptimized>? = null, token: SearchToken? = null): List<JmSearchResult>
+    {
+        return searchAll(text, listOf(textOffset), entryCache, token)[textOffset] ?: emptyList()
+    }
+
+    /**
+     * Searches text starting at each of textOffsets, fetching the entries for all of them at once
+     *
+     * @param entryCache Entries already fetched by earlier searches over the same text, by id. Searches sharing it
+     * only fetch the entries they haven't seen yet.
+     * @param token If given, the search stops with a CancellationException as soon as the token is cancelled
+     * @return Ranked entries matching text starting at each offset
+     */
+    @Throws(SQLException::class, CancellationException::class)
+    fun searchAll(text: String, textOffsets: List<Int>, entryCache: MutableMap<Int, EntryOptimized>? = null, token: SearchToken? = null): Map<Int, List<JmSearchResult>>
+    {
+        // Until the index has been built, fall back to scanning every entry starting with the same character
+        val index = JmIndex.getIfLoaded() ?: return searchAllDatabase(text, textOffsets, token)
+
+        val results = HashMap<Int, List<JmSearchResult>>()
+        val pendingSearches = LinkedHashMap<String, PendingSearch>()
+        val ids = HashSet<Int>()
+        val cacheOwner = getCacheOwner(index)
+
+        for (textOffset in textOffsets)
+        {
+            token?.throwIfCancelled()
+
+            val end = getWindowEnd(text, textOffset)
+            val prefixSearch = index.commonPrefixSearch(text, textOffset, end)
+
+            // Deinflection only rewrites the tail of a word, so a prefix can only deinflect into a dictionary word
+            // if everything past the reachable part of the trie could be removed by some inflection rule
+            var deinflectableEnd = textOffset + prefixSearch.reachableLength
+            while (deinflectableEnd < end && mDeinflector.isInflectionChar(text[deinflectableEnd]))
+            {
+                deinflectableEnd++
+            }
+
+            // Nothing past deinflectableEnd can change the results, so the same word is a cache hit in any sentence.
+            // The first character always counts, it is looked up in the kanji table even if it isn't part of a word.
+            val cacheKey = text.substring(textOffset, maxOf(deinflectableEnd, text.offsetByCodePoints(textOffset, 1)))
+            val cachedResults = SearchCache.shared.get(cacheOwner, cacheKey)
+            if (cachedResults != null)
+            {
+                results[textOffset] = cachedResults
+                continue
+            }
+
+            // Same word somewhere earlier in the text
+            val pendingSearch = pendingSearches[cacheKey]
+            if (pendingSearch != null)
+            {
+                pendingSearch.offsets.add(textOffset)
+                continue
+            }
+
+            prefixSearch.matches.forEach { match -> match.entryIds.forEach { ids.add(it) } }
+
+            val candidates = ArrayList<Candidate>()
+            for (wordEnd in deinflectableEnd downTo textOffset + 1)
+            {
+                token?.throwIfCancelled()
+
+                val word = text.substring(textOffset, wordEnd)
+                val candidate = Candidate(word, mDeinflector.getPotentialDeinflections(word, index))
+                candidate.deinflections.forEach { deinfInfo -> index.getEntryIds(deinfInfo.word).forEach { ids.add(it) } }
+                candidates.add(candidate)
+            }
+
+            pendingSearches[cacheKey] = PendingSearch(cacheKey, candidates).apply { offsets.add(textOffset) }
+        }
+
+        if (pendingSearches.isEmpty()) return results
+
+        val entrySource = mJmDbHelper.entrySource
+        val entriesByKey = groupByKey(getEntries(entrySource, ids, entryCache))
+        token?.throwIfCancelled()
+
+        for (pendingSearch in pendingSearches.values)
+        {
+            val matchedEntries = getMatchedEntries(pendingSearch.candidates, entriesByKey, token) + getKanjiResults(pendingSearch.cacheKey, 0)
+            val offsetResults = rankResults(matchedEntries)
+            SearchCache.shared.put(cacheOwner, pendingSearch.cacheKey, offsetResults)
+            pendingSearch.offsets.forEach { results[it] = offsetResults }
+        }
+
+        return results
+    }
+
+    @Throws(SQLException::class)
+    private fun searchAllDatabase(text: String, textOffsets: List<Int>, token: SearchToken?): Map<Int, List<JmSearchResult>>
+    {
+        val results = HashMap<Int, List<JmSearchResult>>()
+
+        // Every offset starting with the same character needs the same entries, so only query once per character
+        for ((character, offsetsForCharacter) in textOffsets.groupBy { String(intArrayOf(text.codePointAt(it)), 0, 1) })
+        {
+            token?.throwIfCancelled()
+
+            val kanjiResults = getKanjiResults(character, 0)
+            val entriesByKey = groupByKey(mJmDbHelper.getEntriesStartingWith(character))
+
+            for (textOffset in offsetsForCharacter)
+            {
+                results[textOffset] = rankResults(getMatchedEntries(getCandidates(text, textOffset, token), entriesByKey, token) + kanjiResults)
+            }
+        }
+
+        return results
+    }
+
+    /**
+     * @return Every prefix of the window starting at textOffset with its deinflections
+     */
+    private fun getCandidates(text: String, textOffset: Int, token: SearchToken?): List<Candidate>
+    {
+        val candidates = ArrayList<Candidate>()
+        var word = text.substring(textOffset, getWindowEnd(text, textOffset))
+
+        while (word.isNotEmpty())
+        {
+            token?.throwIfCancelled()
+
+            candidates.add(Candidate(word, mDeinflector.getPotentialDeinflections(word)))
+            word = word.substring(0, word.length - 1)
+        }
+
+        return candidates
+    }
+
+    /**
+     * Results computed with one index and kanji table are cached together, and dropped once either of them changes
+     */
+    private fun getCacheOwner(index: JmIndex): Any
+    {
+        val kanjiTable = KanjiTable.getIfLoaded()
+        var owner = cacheOwner
+
+        if (owner == null || owner.first !== index || owner.second !== kanjiTable)
+        {
+            owner = Pair(index, kanjiTable)
+            cacheOwner = owner
+        }
+
+        return owner
+    }
+
+    /**
+     * @return The KANJIDIC entries of the character at textOffset, empty until the kanji table has been loaded
+     */
+    private fun getKanjiResults(text: String, textOffset: Int): List<JmSearchResult>
+    {
+        val kanjiTable = KanjiTable.getIfLoaded() ?: return emptyList()
+        val codePoint = text.codePointAt(textOffset)
+        val character = String(intArrayOf(codePoint), 0, 1)
+
+        return kanjiTable.get(codePoint).map { JmSearchResult(getKanjiEntry(it), DeinflectionInfo(character, 0, null), character) }
+    }
+
+    private fun getWindowEnd(text: String, textOffset: Int): Int
+    {
+        return if (textOffset + 80 >= text.length) text.length else textOffset + 80
+    }
+
+    @Throws(SQLException::class)
+    private fun getEntries(entrySource: IEntrySource, ids: Collection<Int>, entryCache: MutableMap<Int, EntryOptimized>?): List<EntryOptimized>
+    {
+        if (entryCache == null) return entrySource.getEntries(ids)
+
+        val missingIds = ids.filter { !entryCache.containsKey(it) }
+        if (missingIds.isNotEmpty())
+        {
+            entrySource.getEntries(missingIds).forEach { entryCache[it.id] = it }
+        }
+
+        return ids.mapNotNull { entryCache[it] }
+    }
+
+    /**
+     * Groups entries under every key [JmIndex] finds them by, so words can be matched against readings as well as
+     * surface forms
+     */
+    private fun groupByKey(entries: List<EntryOptimized>): Map<String, List<EntryOptimized>>
+    {
+        val entriesByKey = HashMap<String, MutableList<EntryOptimized>>()
+
+        for (entry in entries)
+        {
+            for (key in JmIndex.getKeys(entry.kanji, entry.readings, entry.dictionary))
+            {
+                entriesByKey.getOrPut(key) { ArrayList() }.add(entry)
+            }
+        }
+
+        return entriesByKey
+    }
+
+    private fun getMatchedEntries(candidates: List<Candidate>, entriesByKey: Map<String, List<EntryOptimized>>, token: SearchToken?): List<JmSearchResult>
+    {
+        val seenEntries = HashSet<EntryOptimized>()
+        val results = ArrayList<JmSearchResult>()
+
+        for (candidate in candidates)
+        {
+            token?.throwIfCancelled()
+
+            val word = candidate.word
+
+            // Find deinflections and add them
+            var count = 0
+            for (deinfInfo in candidate.deinflections)
+            {
+                val filteredEntry: List<EntryOptimized> = entriesByKey[JmIndex.toKey(deinfInfo.word)] ?: continue
+
+                for (entry in filteredEntry){
+
+                    if (seenEntries.contains(entry)){
+                        continue
+                    }
+
+                    var valid = true
+
+                    if (count > 0)
+                    {
+                        valid = (deinfInfo.type and entry.posMask) != 0
+                    }
+
+                    if (valid){
+                        results.add(JmSearchResult(entry, deinfInfo, word))
+                        seenEntries.add(entry)
+                    }
+
+                    count++
+                }
+            }
+
+            // Add all exact matches as well
+            val filteredEntry: List<EntryOptimized> = entriesByKey[JmIndex.toKey(word)] ?: emptyList()
+            for (entry in filteredEntry)
+            {
+                if (seenEntries.contains(entry))
+                {
+                    continue
+                }
+
+                results.add(JmSearchResult(entry, DeinflectionInfo(word, 0, null), word))
+                seenEntries.add(entry)
+            }
+        }
+
+        return results
+    }
+
+    private fun rankResults(results: List<JmSearchResult>) : List<JmSearchResult>
+    {
+        // Rank in the high bits and position in the low bits keeps the sort stable without boxing or a comparator.
+        // Length is that of the matched word, which is the kanji for surface matches but the reading for reading matches.
+        val keys = LongArray(results.size) {
+            val result = results[it]
+            (EntryRank.withLength(result.entry.rank, result.deinfInfo.word.length).toLong() shl 32) or it.toLong()
+        }
+        keys.sort()
+
+        return keys.map { results[(it and 0xffffffffL).toInt()] }
+    }
+}
@@ -3,43 +3,32 @@ package ca.fuwafuwa.gaku.Search
 import android.content.Context
 import android.os.AsyncTask
 
-import com.j256.ormlite.dao.Dao
-
-import java.sql.SQLException
-
-import ca.fuwafuwa.gaku.Database.KanjiDict2Database.Kd2DatabaseHelper
+import ca.fuwafuwa.gaku.Database.KanjiDict2Database.KanjiTable
 import ca.fuwafuwa.gaku.Database.KanjiDict2Database.Models.CharacterOptimized
 
 /**
  * Created by 0xbad1d3a5 on 12/16/2016.
  */
 
-class Kd2Task @Throws(SQLException::class)
-constructor(private val mSearchInfo: SearchInfo, private val mSearchKd2TaskDone: SearchKd2TaskDone, context: Context) : AsyncTask<Void, Void, List<CharacterOptimized>>()
+class Kd2Task(private val mSearchInfo: SearchInfo, private val mSearchKd2TaskDone: SearchKd2TaskDone, context: Context) : AsyncTask<Void, Void, List<CharacterOptimized>>()
 {
     companion object
     {
         private val TAG = Kd2Task::class.java.name
     }
 
-    private val mKd2DbHelper: Kd2DatabaseHelper
-    private val mCharacterOptimizedDao: Dao<CharacterOptimized, Int>
+    private val mContext = context.applicationContext
 
     interface SearchKd2TaskDone
     {
         fun kd2TaskCallback(results: List<CharacterOptimized>, searchInfo: SearchInfo)
     }
 
-    init
-    {
-        this.mKd2DbHelper = Kd2DatabaseHelper.instance(context)
-        this.mCharacterOptimizedDao = mKd2DbHelper.getDbDao(CharacterOptimized::class.java)
-    }
-
     override fun doInBackground(vararg params: Void): List<CharacterOptimized>
     {
-        val character = String(intArrayOf(mSearchInfo.text.codePointAt(mSearchInfo.textOffset)), 0, 1).replace("%", "\\%")
-        return mCharacterOptimizedDao.queryBuilder().where().like("kanji", "$character%").query().toList()
+        // Only the first lookup maps the table, every lookup after that is an array read
+        val table = KanjiTable.load(mContext) ?: return emptyList()
+        return table.get(mSearchInfo.text.codePointAt(mSearchInfo.textOffset))
     }
 
     override fun onPostExecute(result: List<CharacterOptimized>)
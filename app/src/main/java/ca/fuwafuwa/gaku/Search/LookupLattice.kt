@@ -0,0 +1,113 @@
+package ca.fuwafuwa.gaku.Search
+
+import android.content.Context
+import android.os.Process
+import android.util.Log
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized
+import ca.fuwafuwa.gaku.Windows.Data.DisplayData
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Search results for every character offset of a [DisplayData]'s text, computed in the background right after
+ * recognition so that tapping a character can be answered from memory.
+ *
+ * Offsets that haven't been computed yet are looked up on demand by the [Searcher], which then stores its results
+ * here so the background build skips them.
+ */
+class LookupLattice private constructor(val text: String, private val offsets: List<Int>)
+{
+    private val results = ConcurrentHashMap<Int, List<JmSearchResult>>()
+    private val generations = AtomicInteger()
+    private val token = SearchToken(generations, 0)
+
+    /**
+     * @return Results for textOffset, or null if they haven't been computed yet or the text has changed since
+     */
+    fun get(text: String, textOffset: Int): List<JmSearchResult>?
+    {
+        return if (text == this.text) results[textOffset] else null
+    }
+
+    fun put(text: String, textOffset: Int, offsetResults: List<JmSearchResult>)
+    {
+        if (text == this.text) results.putIfAbsent(textOffset, offsetResults)
+    }
+
+    fun cancel()
+    {
+        generations.incrementAndGet()
+    }
+
+    private fun compute(matcher: JmMatcher)
+    {
+        val startTime = System.currentTimeMillis()
+
+        // Overlapping windows match many of the same entries, so only fetch each one once
+        val entryCache = HashMap<Int, EntryOptimized>()
+
+        // Batches fetch the entries for all their offsets in one go, while still letting taps be answered from the
+        // first batches of a long text before the rest is done
+        for (batch in offsets.chunked(BATCH_SIZE))
+        {
+            val pendingOffsets = batch.filter { !results.containsKey(it) }
+            if (pendingOffsets.isEmpty()) continue
+
+            matcher.searchAll(text, pendingOffsets, entryCache, token).forEach { (offset, offsetResults) ->
+                EntryFormatter.prefetch(offsetResults)
+                results.putIfAbsent(offset, offsetResults)
+            }
+        }
+
+        Log.d(TAG, "LookupLattice time for ${offsets.size} offsets: ${System.currentTimeMillis() - startTime}")
+    }
+
+    companion object
+    {
+        private val TAG = LookupLattice::class.java.name
+        private const val BATCH_SIZE = 64
+
+        private val executor: ExecutorService = Executors.newSingleThreadExecutor { runnable ->
+            val thread = Thread {
+                // On-demand searches for taps take priority over filling in the rest of the lattice
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND)
+                runnable.run()
+            }
+            thread.name = "LookupLattice"
+            thread.isDaemon = true
+            thread
+        }
+
+        /**
+         * Attaches a new lattice to displayData, replacing any previous one, and starts filling it in on a
+         * background thread
+         */
+        @JvmStatic fun build(context: Context, displayData: DisplayData): LookupLattice
+        {
+            val lattice = LookupLattice(displayData.text, displayData.textOffsets)
+            displayData.lookupLattice?.cancel()
+            displayData.lookupLattice = lattice
+
+            val matcher = JmMatcher(context)
+            executor.execute {
+                try
+                {
+                    lattice.compute(matcher)
+                }
+                catch (e: CancellationException)
+                {
+                    Log.d(TAG, "LookupLattice cancelled")
+                }
+                catch (e: Exception)
+                {
+                    Log.e(TAG, "Failed to build LookupLattice", e)
+                }
+            }
+
+            return lattice
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package ca.fuwafuwa.gaku.Search
+
+import android.util.Log
+
+/**
+ * LRU cache of ranked search results, keyed on the part of the text window that can affect the results.
+ *
+ * Bounded both by number of result lists and by an estimate of their size. Results are only valid for the
+ * dictionary they were computed with, so the cache empties itself whenever it is used with a different one.
+ */
+class SearchCache(private val maxEntries: Int, private val maxBytes: Long)
+{
+    private class CachedResults(val results: List<JmSearchResult>, val bytes: Long)
+
+    private val cache = LinkedHashMap<String, CachedResults>(16, 0.75f, true)
+    private var dictionary: Any? = null
+    private var bytes = 0L
+
+    var hits = 0L
+        private set
+    var misses = 0L
+        private set
+
+    /**
+     * @param dictionary Whatever the results are computed from, compared by identity
+     * @return Cached results for key, or null if there are none
+     */
+    @Synchronized fun get(dictionary: Any, key: String): List<JmSearchResult>?
+    {
+        checkDictionary(dictionary)
+
+        val cached = cache[key]
+        if (cached == null)
+        {
+            misses++
+            return null
+        }
+
+        hits++
+        return cached.results
+    }
+
+    @Synchronized fun put(dictionary: Any, key: String, results: List<JmSearchResult>)
+    {
+        checkDictionary(dictionary)
+
+        val cached = CachedResults(results, estimateBytes(key, results))
+        cache.put(key, cached)?.let { bytes -= it.bytes }
+        bytes += cached.bytes
+
+        val iterator = cache.values.iterator()
+        while ((cache.size > maxEntries || bytes > maxBytes) && iterator.hasNext())
+        {
+            bytes -= iterator.next().bytes
+            iterator.remove()
+        }
+    }
+
+    @Synchronized fun invalidate()
+    {
+        cache.clear()
+        bytes = 0
+        dictionary = null
+    }
+
+    @Synchronized override fun toString(): String
+    {
+        return "SearchCache: ${cache.size} entries, ~$bytes bytes, $hits hits, $misses misses"
+    }
+
+    private fun checkDictionary(dictionary: Any)
+    {
+        if (this.dictionary === dictionary) return
+
+        if (this.dictionary != null)
+        {
+            Log.d(TAG, "Dictionary changed, invalidating $this")
+        }
+
+        invalidate()
+        this.dictionary = dictionary
+    }
+
+    /**
+     * Rough size of the results without decoding anything that hasn't been decoded yet, meanings are by far the
+     * biggest part of an entry and are only read when displayed
+     */
+    private fun estimateBytes(key: String, results: List<JmSearchResult>): Long
+    {
+        var size = OBJECT_OVERHEAD + key.length * 2L
+        for (result in results)
+        {
+            size += OBJECT_OVERHEAD + result.word.length * 2L + ENTRY_ESTIMATE
+        }
+        return size
+    }
+
+    companion object
+    {
+        private val TAG = SearchCache::class.java.name
+
+        private const val OBJECT_OVERHEAD = 48L
+        private const val ENTRY_ESTIMATE = 512L
+
+        /**
+         * Shared by every window's [Searcher], and by the [LookupLattice]
+         */
+        @JvmStatic val shared = SearchCache(512, 4L * 1024 * 1024)
+    }
+}
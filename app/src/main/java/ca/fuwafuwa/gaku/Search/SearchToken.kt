@@ -0,0 +1,23 @@
+package ca.fuwafuwa.gaku.Search
+
+import java.util.concurrent.CancellationException
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Identifies one search started by a [Searcher]. Starting a newer search on the same Searcher cancels this one.
+ *
+ * @property generation Generation of the search, searches started later have higher generations
+ */
+class SearchToken(private val generations: AtomicInteger, val generation: Int)
+{
+    val isCancelled: Boolean get() = generations.get() != generation
+
+    /**
+     * Cancellation point for work done on behalf of the search
+     */
+    @Throws(CancellationException::class)
+    fun throwIfCancelled()
+    {
+        if (isCancelled) throw CancellationException("Search $generation superseded by ${generations.get()}")
+    }
+}
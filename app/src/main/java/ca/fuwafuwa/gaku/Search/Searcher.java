@@ -1,16 +1,23 @@
 package ca.fuwafuwa.gaku.Search;
 
 import android.content.Context;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import org.jetbrains.annotations.NotNull;
 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized;
 import ca.fuwafuwa.gaku.Database.KanjiDict2Database.Models.CharacterOptimized;
+import ca.fuwafuwa.gaku.Windows.Data.DisplayData;
 
 /**
  * Created by 0xbad1d3a5 on 8/28/2016.
@@ -24,12 +31,34 @@ public class Searcher implements JmTask.SearchJmTaskDone {
 
     private static final String TAG = Searcher.class.getName();
 
+    private static final long SEARCH_THREAD_KEEP_ALIVE_SECONDS = 30;
+
     private SearchDictDone mSearchDictDone;
     private Context mContext;
+    private Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * One per Searcher, so each window searches on a thread of its own and windows borrow different connections from
+     * the read-only pool at the same time. Stale searches skip themselves when they reach the front of the queue, so
+     * a burst of taps only costs the search that is still current. The thread stops while the window is idle.
+     */
+    private final ThreadPoolExecutor mSearchExecutor = new ThreadPoolExecutor(1, 1,
+            SEARCH_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "SearchThread");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // Incremented for every search, only results from the latest generation are delivered
+    private AtomicInteger mGenerations = new AtomicInteger();
 
     public Searcher(Context context) throws SQLException
     {
         mContext = context;
+        mSearchExecutor.allowCoreThreadTimeOut(true);
     }
 
     public void registerCallback(SearchDictDone dictDone)
@@ -39,22 +68,63 @@ public class Searcher implements JmTask.SearchJmTaskDone {
 
     public void unregisterCallback()
     {
+        mGenerations.incrementAndGet();
         this.mSearchDictDone = null;
     }
 
-    public void search(SearchInfo searchInfo)
+    /**
+     * Searches asynchronously, cancelling any search of this Searcher that hasn't delivered its results yet
+     */
+    public void search(final SearchInfo searchInfo)
     {
+        final SearchToken token = new SearchToken(mGenerations, mGenerations.incrementAndGet());
+
+        LookupLattice lattice = searchInfo.getSquareChar().getDisplayData().getLookupLattice();
+        final List<JmSearchResult> precomputed = lattice == null ? null : lattice.get(searchInfo.getText(), searchInfo.getTextOffset());
+
+        if (precomputed != null){
+            // Still deliver asynchronously, callers expect the callback to happen after search() returns
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!token.isCancelled()){
+                        jmTaskCallback(precomputed, searchInfo);
+                    }
+                }
+            });
+            return;
+        }
+
         try {
-            new JmTask(searchInfo, this, mContext).executeOnExecutor(AsyncTask.SERIAL_EXECUTOR);
+            mSearchExecutor.execute(new JmTask(searchInfo, this, mContext, token));
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Looks up every character of displayData in the background, fetching the entries for a batch of characters at a
+     * time instead of querying once per character. Later searches of its characters are answered from these results
+     * once they are in.
+     *
+     * @return The lattice the results are collected in, also attached to displayData
+     */
+    public LookupLattice searchAll(DisplayData displayData)
+    {
+        return LookupLattice.build(mContext, displayData);
+    }
+
     @Override
     public void jmTaskCallback(@NotNull List<JmSearchResult> results, @NotNull SearchInfo searchInfo)
     {
-        mSearchDictDone.jmResultsCallback(results, searchInfo);
+        LookupLattice lattice = searchInfo.getSquareChar().getDisplayData().getLookupLattice();
+        if (lattice != null){
+            lattice.put(searchInfo.getText(), searchInfo.getTextOffset(), results);
+        }
+
+        if (mSearchDictDone != null){
+            mSearchDictDone.jmResultsCallback(results, searchInfo);
+        }
     }
 }
 
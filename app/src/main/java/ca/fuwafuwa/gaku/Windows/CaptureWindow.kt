@@ -18,12 +18,15 @@ import ca.fuwafuwa.gaku.*
 import ca.fuwafuwa.gaku.Ocr.BoxParams
 import ca.fuwafuwa.gaku.Ocr.OcrParams
 import ca.fuwafuwa.gaku.Ocr.OcrRunnable
+import ca.fuwafuwa.gaku.Ocr.ScreenCrop
 import ca.fuwafuwa.gaku.Prefs
 import ca.fuwafuwa.gaku.R
 import ca.fuwafuwa.gaku.Windows.Interfaces.WindowListener
 import ca.fuwafuwa.gaku.XmlParsers.CommonParser
 import java.io.FileOutputStream
 import java.io.IOException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
 
 /**
  * Created by 0xbad1d3a5 on 4/13/2016.
@@ -47,8 +50,11 @@ class CaptureWindow(context: Context, windowCoordinator: WindowCoordinator) : Wi
 
     private var mCommonParser: CommonParser? = null
 
+    private val bitmapPool: BitmapPool
+        get() = (context as MainService).bitmapPool
+
     // Helper class to hold data
-    private inner class ScreenshotForOcr(val crop: Bitmap?, val orig: Bitmap?, val params: BoxParams?)
+    private inner class ScreenshotForOcr(val crop: Bitmap?, val params: BoxParams?)
 
     init
     {
@@ -194,6 +200,7 @@ class CaptureWindow(context: Context, windowCoordinator: WindowCoordinator) : Wi
             {
                 mImageView.imageAlpha = 255
                 mImageView.setImageResource(0)
+                bitmapPool.releaseBitmap(mScreenshotForOcr?.crop)
                 mScreenshotForOcr = null
             }
         }
@@ -221,21 +228,26 @@ class CaptureWindow(context: Context, windowCoordinator: WindowCoordinator) : Wi
         mWindowBox.getLocationOnScreen(viewPos)
         val box = BoxParams(viewPos[0], viewPos[1], params.width, params.height)
 
+        // The border has just been set to ready, only frames after this can show it
+        val borderChangedNanos = System.nanoTime()
+
         val thread = Thread(Runnable {
             
             // 2. Pass the pre-calculated box to the generator
-            val ocrScreenshot = getOcrData(box)
+            val ocrScreenshot = getOcrData(box, borderChangedNanos)
 
-            if (ocrScreenshot == null || ocrScreenshot.crop == null || ocrScreenshot.orig == null || ocrScreenshot.params == null)
+            if (ocrScreenshot == null || ocrScreenshot.crop == null || ocrScreenshot.params == null)
             {
                 mProcessingPreview = false
                 return@Runnable
             }
 
             (context as MainService).handler.post {
+                val previousScreenshot = mScreenshotForOcr
                 mScreenshotForOcr = ocrScreenshot
 
                 mImageView.setImageBitmap(mScreenshotForOcr!!.crop)
+                bitmapPool.releaseBitmap(previousScreenshot?.crop)
 
                 if (mPrefs!!.instantModeSetting && System.currentTimeMillis() > mLastDoubleTapTime + mLastDoubleTapIgnoreDelay)
                 {
@@ -267,15 +279,7 @@ class CaptureWindow(context: Context, windowCoordinator: WindowCoordinator) : Wi
 
         try
         {
-            if (!instant)
-            {
-                while (!mOcr.isReadyForOcr)
-                {
-                    mOcr.cancel()
-                    Thread.sleep(10)
-                }
-            }
-
+            // A new request supersedes whatever OCR is still running, there's no need to wait for it
             if (mScreenshotForOcr == null)
             {
                 mProcessingOcr = false
@@ -293,11 +297,11 @@ class CaptureWindow(context: Context, windowCoordinator: WindowCoordinator) : Wi
 
     // FIX: Renamed from getter to normal function, accepts box params explicitly
     @Throws(Exception::class)
-    private fun getOcrData(box: BoxParams): ScreenshotForOcr?
+    private fun getOcrData(box: BoxParams, borderChangedNanos: Long): ScreenshotForOcr?
     {
         try
         {
-            return getReadyScreenshot(box)
+            return getReadyScreenshot(box, borderChangedNanos)
         } catch (e: Exception)
         {
             e.printStackTrace()
@@ -305,85 +309,108 @@ class CaptureWindow(context: Context, windowCoordinator: WindowCoordinator) : Wi
         return null
     }
 
+    /**
+     * Waits for the frames that come after the border changed, until one shows the whole border as ready
+     */
     @Throws(Exception::class)
-    private fun getReadyScreenshot(box: BoxParams): ScreenshotForOcr?
+    private fun getReadyScreenshot(box: BoxParams, borderChangedNanos: Long): ScreenshotForOcr?
     {
         Log.d(TAG, String.format("X:%d Y:%d (%dx%d)", box.x, box.y, box.width, box.height))
 
+        val mainService = context as MainService
         var screenshotReady = false
-        val startTime = System.currentTimeMillis()
-        var screenshot: Bitmap? = null
+        val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2)
+        var frameAfter = borderChangedNanos
+        var screenCrop: ScreenCrop? = null
 
-        do
+        while (!screenshotReady)
         {
-            val bitmap = (context as MainService).screenshotBitmap
-            if (bitmap == null) {
-                Thread.sleep(10)
-                continue
+            val frame = mainService.getFrameAfter(frameAfter)
+            val frameTimestamp = try
+            {
+                frame.get(maxOf(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS)
+            }
+            catch (e: TimeoutException)
+            {
+                frame.cancel(false)
+                null
+            }
+
+            // Check the newest frame even after timing out, the screen may not have changed since the border did
+            val crop = mainService.getScreenCrop(box)
+            if (crop != null)
+            {
+                screenCrop?.release()
+                screenCrop = crop
+                screenshotReady = checkScreenshotIsReady(crop)
             }
-            screenshot = bitmap
-            screenshotReady = checkScreenshotIsReady(screenshot!!, box)
 
-        } while (!screenshotReady && System.currentTimeMillis() < startTime + 2000)
+            frameAfter = frameTimestamp ?: break
+        }
 
-        if (screenshot == null || !screenshotReady)
+        if (screenCrop == null || !screenshotReady)
         {
-            if (screenshot != null) {
-                val croppedBitmap = getCroppedBitmap(screenshot!!, box)
-                saveBitmap(screenshot!!, String.format("error_(%d,%d)_(%d,%d)", box.x, box.y, box.width, box.height))
-                saveBitmap(croppedBitmap, String.format("error_(%d,%d)_(%d,%d)", box.x, box.y, box.width, box.height))
+            if (screenCrop != null) {
+                val errorBitmap = screenCrop.toBitmap(0)
+                try {
+                    saveBitmap(errorBitmap, String.format("error_(%d,%d)_(%d,%d)", box.x, box.y, box.width, box.height))
+                } finally {
+                    bitmapPool.releaseBitmap(errorBitmap)
+                    screenCrop.release()
+                }
             }
             return null
         }
 
-        val croppedBitmap = getCroppedBitmap(screenshot!!, box)
+        // Leave out the window's border
+        val croppedBitmap = screenCrop.toBitmap(dpToPx(context, 1) + 1)
+        screenCrop.release()
 
-        return ScreenshotForOcr(croppedBitmap, screenshot, box)
+        return ScreenshotForOcr(croppedBitmap, box)
     }
 
-    private fun checkScreenshotIsReady(screenshot: Bitmap, box: BoxParams): Boolean
+    /**
+     * Checks that the whole border of the box is the window's ready color, which means the frame was taken after the
+     * window switched to its ready border
+     */
+    private fun checkScreenshotIsReady(crop: ScreenCrop): Boolean
     {
         val readyColor = ContextCompat.getColor(context, R.color.red_capture_window_ready)
-        
-        // Safety check to ensure box is within screenshot bounds (prevent crash if screen rotated/resized)
-        if (box.x + box.width > screenshot.width || box.y + box.height > screenshot.height) {
-            return false
-        }
 
-        val screenshotColor = screenshot.getPixel(box.x, box.y)
+        val screenshotColor = crop.getPixel(0, 0)
 
         if (readyColor != screenshotColor && isAcceptableAlternateReadyColor(screenshotColor))
         {
             return false
         }
 
-        for (x in box.x until box.x + box.width)
+        for (x in 0 until crop.width)
         {
-            if (!isRGBWithinTolerance(readyColor, screenshot.getPixel(x, box.y)))
+            if (!isRGBWithinTolerance(readyColor, crop.getPixel(x, 0)))
             {
                 return false
             }
         }
 
-        for (x in box.x until box.x + box.width)
+        for (x in 0 until crop.width)
         {
-            if (!isRGBWithinTolerance(readyColor, screenshot.getPixel(x, box.y + box.height - 1)))
+            if (!isRGBWithinTolerance(readyColor, crop.getPixel(x, crop.height - 1)))
             {
                 return false
             }
         }
 
-        for (y in box.y until box.y + box.height)
+        for (y in 0 until crop.height)
         {
-            if (!isRGBWithinTolerance(readyColor, screenshot.getPixel(box.x, y)))
+            if (!isRGBWithinTolerance(readyColor, crop.getPixel(0, y)))
             {
                 return false
             }
         }
 
-        for (y in box.y until box.y + box.height)
+        for (y in 0 until crop.height)
         {
-            if (!isRGBWithinTolerance(readyColor, screenshot.getPixel(box.x + box.width - 1, y)))
+            if (!isRGBWithinTolerance(readyColor, crop.getPixel(crop.width - 1, y)))
             {
                 return false
             }
@@ -431,21 +458,6 @@ class CaptureWindow(context: Context, windowCoordinator: WindowCoordinator) : Wi
 
 
 
-    private fun getCroppedBitmap(screenshot: Bitmap, box: BoxParams): Bitmap
-    {
-        val borderSize = dpToPx(context, 1) + 1
-        
-        // Safety check for bounds
-        val width = if (box.width - 2 * borderSize > 0) box.width - 2 * borderSize else 1
-        val height = if (box.height - 2 * borderSize > 0) box.height - 2 * borderSize else 1
-        
-        return Bitmap.createBitmap(screenshot,
-                box.x + borderSize,
-                box.y + borderSize,
-                width,
-                height)
-    }
-
     @Throws(IOException::class)
     private fun saveBitmap(bitmap: Bitmap, name: String)
     {
@@ -2,12 +2,18 @@ package ca.fuwafuwa.gaku.Windows.Data
 
 import android.graphics.Bitmap
 import ca.fuwafuwa.gaku.Ocr.BoxParams
+import ca.fuwafuwa.gaku.Search.LookupLattice
 import ca.fuwafuwa.gaku.splitTextByChar
 
 open class DisplayData(var squareChars: List<ISquareChar>)
 {
     open var instantMode = false
 
+    /**
+     * Precomputed search results for the text, see [LookupLattice.build]
+     */
+    @Volatile var lookupLattice: LookupLattice? = null
+
     val text: String
         get()
         {
@@ -27,6 +33,24 @@ open class DisplayData(var squareChars: List<ISquareChar>)
             return squareChars.size
         }
 
+    /**
+     * Offset in [text] of each character
+     */
+    val textOffsets: List<Int>
+        get()
+        {
+            val offsets = ArrayList<Int>(squareChars.size)
+            var offset = 0
+
+            for (char in squareChars)
+            {
+                offsets.add(offset)
+                offset += char.char.length
+            }
+
+            return offsets
+        }
+
     fun recomputeChars()
     {
         val newSquareChars = mutableListOf<ISquareChar>()
@@ -69,6 +93,10 @@ open class DisplayData(var squareChars: List<ISquareChar>)
 
         squareChars = newSquareChars
         assignIndicies()
+
+        // The text has changed, so the precomputed results no longer line up with it
+        lookupLattice?.cancel()
+        lookupLattice = null
     }
 
     fun assignIndicies()
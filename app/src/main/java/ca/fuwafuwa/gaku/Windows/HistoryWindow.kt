@@ -12,9 +12,8 @@ import android.widget.HorizontalScrollView
 import android.widget.LinearLayout
 import android.widget.TextView
 import ca.fuwafuwa.gaku.DB_JMDICT_NAME
-import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized
-import ca.fuwafuwa.gaku.LangUtils
 import ca.fuwafuwa.gaku.R
+import ca.fuwafuwa.gaku.Search.EntryFormatter
 import ca.fuwafuwa.gaku.Search.JmSearchResult
 import ca.fuwafuwa.gaku.Windows.Data.ISquareChar
 import ca.fuwafuwa.gaku.Windows.Enums.LayoutPosition
@@ -253,7 +252,7 @@ class HistoryWindow(context: Context,
             }
 
             sb.append("\n")
-            sb.append(getMeaning(entry))
+            sb.append(EntryFormatter.getMeaning(entry))
             sb.append("\n\n")
         }
 
@@ -264,31 +263,6 @@ class HistoryWindow(context: Context,
 
         pastDictResults.setText(sb.toString())
     }
-
-    private fun getMeaning(entry: EntryOptimized): String
-    {
-        val meanings = entry.meanings.split("\ufffc".toRegex()).toTypedArray()
-        val pos = entry.pos.split("\ufffc".toRegex()).toTypedArray()
-
-        val sb = StringBuilder()
-
-        for (i in meanings.indices)
-        {
-            if (i != 0)
-            {
-                sb.append(" ")
-            }
-            sb.append(LangUtils.ConvertIntToCircledNum(i + 1))
-            sb.append(" ")
-            if (DB_JMDICT_NAME == entry.dictionary && !pos[i].isEmpty())
-            {
-                sb.append(String.format("(%s) ", pos[i]))
-            }
-            sb.append(meanings[i])
-        }
-
-        return sb.toString()
-    }
 }
 
 
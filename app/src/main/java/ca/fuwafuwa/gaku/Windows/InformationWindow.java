@@ -24,10 +24,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 import ca.fuwafuwa.gaku.Constants;
-import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized;
 import ca.fuwafuwa.gaku.GakuTools;
-import ca.fuwafuwa.gaku.LangUtils;
 import ca.fuwafuwa.gaku.R;
+import ca.fuwafuwa.gaku.Search.EntryFormatter;
 import ca.fuwafuwa.gaku.Search.JmSearchResult;
 import ca.fuwafuwa.gaku.Search.SearchInfo;
 import ca.fuwafuwa.gaku.Search.Searcher;
@@ -95,6 +94,9 @@ public class InformationWindow extends Window implements Searcher.SearchDictDone
         for (String c : charList) squareCharList.add(new SquareChar(displayData, c));
         displayData.assignIndicies();
 
+        // Shared text can be long, so look up the rest of it in the background while the first character is shown
+        mSearcher.searchAll(displayData);
+
         mKanjiGrid.setText(displayData);
         performSearch(displayData.getSquareChars().get(0));
 
@@ -359,7 +361,7 @@ public class InformationWindow extends Window implements Searcher.SearchDictDone
             }
 
             sb.append("\n");
-            sb.append(getMeaning(jmSearchResult.getEntry()));
+            sb.append(EntryFormatter.getMeaning(jmSearchResult.getEntry()));
             sb.append("\n\n");
         }
 
@@ -370,28 +372,6 @@ public class InformationWindow extends Window implements Searcher.SearchDictDone
 
         mDictResults.setText(sb.toString());
     }
-
-    private String getMeaning(EntryOptimized entry)
-    {
-        String[] meanings = entry.getMeanings().split("\ufffc", -1);
-        String[] pos = entry.getPos().split("\ufffc", -1);
-
-        StringBuilder sb = new StringBuilder();
-
-        for (int i = 0; i < meanings.length; i++){
-            if (i != 0){
-                sb.append(" ");
-            }
-            sb.append(LangUtils.Companion.ConvertIntToCircledNum(i + 1));
-            sb.append(" ");
-            if (Constants.DB_JMDICT_NAME.equals(entry.getDictionary()) && !pos[i].isEmpty()){
-                sb.append(String.format("(%s) ", pos[i]));
-            }
-            sb.append(meanings[i]);
-        }
-
-        return sb.toString();
-    }
 }
 
 
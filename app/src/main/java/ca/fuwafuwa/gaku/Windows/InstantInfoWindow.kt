@@ -10,8 +10,8 @@ import android.widget.FrameLayout
 import android.widget.LinearLayout
 import android.widget.TextView
 import ca.fuwafuwa.gaku.*
-import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized
 
+import ca.fuwafuwa.gaku.Search.EntryFormatter
 import ca.fuwafuwa.gaku.Search.JmSearchResult
 import ca.fuwafuwa.gaku.Search.SearchInfo
 import ca.fuwafuwa.gaku.Search.Searcher
@@ -307,7 +307,7 @@ class InstantInfoWindow(context: Context,
             }
 
             sb.append("\n")
-            sb.append(getMeaning(entry))
+            sb.append(EntryFormatter.getSummary(entry))
             sb.append("\n\n")
         }
 
@@ -319,36 +319,6 @@ class InstantInfoWindow(context: Context,
         textInfo.text = sb.toString()
     }
 
-    private fun getMeaning(entry: EntryOptimized): String
-    {
-        val meanings = entry.meanings.split("\ufffc".toRegex()).toTypedArray()
-        val pos = entry.pos.split("\ufffc".toRegex()).toTypedArray()
-
-        val sb = StringBuilder()
-
-        for (i in meanings.indices)
-        {
-            if (i > 2)
-            {
-                sb.append(" [......]")
-                break
-            }
-            if (i != 0)
-            {
-                sb.append(" ")
-            }
-            sb.append(LangUtils.ConvertIntToCircledNum(i + 1))
-            sb.append(" ")
-            if (DB_JMDICT_NAME == entry.dictionary && !pos[i].isEmpty())
-            {
-                sb.append(String.format("(%s) ", pos[i]))
-            }
-            sb.append(meanings[i])
-        }
-
-        return sb.toString()
-    }
-
     private fun setPadding(l: Int, t: Int, r: Int, b: Int)
     {
         val frameLayout = window.findViewById<FrameLayout>(R.id.instant_info_window_layout)
@@ -1,8 +1,8 @@
 package ca.fuwafuwa.gaku.Windows
 
 import android.content.Context
-import android.graphics.Bitmap
 import android.graphics.Color
+import android.graphics.drawable.BitmapDrawable
 import android.graphics.PixelFormat
 import android.os.Build
 import android.util.TypedValue
@@ -15,7 +15,9 @@ import android.widget.LinearLayout
 import android.widget.RelativeLayout
 import android.widget.TextView
 import androidx.core.content.ContextCompat
+import ca.fuwafuwa.gaku.BitmapPool
 import ca.fuwafuwa.gaku.LangUtils
+import ca.fuwafuwa.gaku.MainService
 import ca.fuwafuwa.gaku.Ocr.BoxParams
 import ca.fuwafuwa.gaku.R
 import ca.fuwafuwa.gaku.Windows.Data.ISquareChar
@@ -39,6 +41,9 @@ class KanjiChoiceWindow(context: Context, windowCoordinator: WindowCoordinator)
 
     private var drawnOnTop = false
 
+    private val bitmapPool: BitmapPool
+        get() = (context as MainService).bitmapPool
+
     /**
      * KanjiChoiceWindow does not need to reInit layout as its getDefaultParams() are all relative. Re-initing will cause bugs.
      */
@@ -177,6 +182,13 @@ class KanjiChoiceWindow(context: Context, windowCoordinator: WindowCoordinator)
         for (k in currentKanjiViews)
         {
             choiceWindow.removeView(k)
+
+            if (k is ImageView)
+            {
+                val bitmap = (k.drawable as? BitmapDrawable)?.bitmap
+                k.setImageDrawable(null)
+                bitmapPool.releaseBitmap(bitmap)
+            }
         }
 
         currentKanjiViews.clear()
@@ -331,7 +343,12 @@ class KanjiChoiceWindow(context: Context, windowCoordinator: WindowCoordinator)
             return
         }
 
-        val bitmapChar = Bitmap.createBitmap(orig, cropX, cropY, width, height)
+        val bitmapChar = bitmapPool.acquireBitmap(width, height)
+        val pixels = bitmapPool.acquirePixels(width * height)
+        orig.getPixels(pixels, 0, width, cropX, cropY, width, height)
+        bitmapChar.setPixels(pixels, 0, width, 0, 0, width, height)
+        bitmapPool.releasePixels(pixels)
+
         val charImage = ImageView(context)
         charImage.setPadding(dp10, dp10, dp10, dp10)
         charImage.layoutParams = LinearLayout.LayoutParams(kanjiWidth, kanjiHeight)
@@ -18,6 +18,7 @@ import java.util.Set;
 import ca.fuwafuwa.gaku.Constants;
 import ca.fuwafuwa.gaku.Database.DatabaseHelper;
 import ca.fuwafuwa.gaku.Database.IDatabaseHelper;
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.EntryRank;
 import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.Entry;
 import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized;
 import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.Kanji;
@@ -39,6 +40,7 @@ import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.Reading;
 import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.ReadingIrregularity;
 import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.ReadingPriority;
 import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.ReadingRestriction;
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.PosMask;
 import ca.fuwafuwa.gaku.LangUtils;
 import ca.fuwafuwa.gaku.XmlParsers.Interfaces.DictParser;
 import ca.fuwafuwa.gaku.XmlParsers.JmDict.JmDTO.JmEntry;
@@ -193,6 +195,8 @@ public class JmParser implements DictParser {
             entryOptimized.setPos(Joiner.on(Constants.DB_SPLIT_CHAR).join(eoPos));
             entryOptimized.setPriorities(Joiner.on(",").join(eoPriorities));
             entryOptimized.setDictionary(Constants.DB_JMDICT_NAME);
+            entryOptimized.setRank(EntryRank.compute(entryOptimized));
+            entryOptimized.setPosMask(PosMask.compute(entryOptimized.getPos()));
 
             if (eoMeanings.size() != eoPos.size()){
                 throw new RuntimeException();
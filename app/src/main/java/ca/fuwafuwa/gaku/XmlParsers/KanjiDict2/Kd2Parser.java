@@ -18,7 +18,6 @@ import java.util.List;
 import ca.fuwafuwa.gaku.Constants;
 import ca.fuwafuwa.gaku.Database.DatabaseHelper;
 import ca.fuwafuwa.gaku.Database.IDatabaseHelper;
-import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized;
 import ca.fuwafuwa.gaku.Database.KanjiDict2Database.Models.CharacterOptimized;
 import ca.fuwafuwa.gaku.XmlParsers.Interfaces.DictParser;
 import ca.fuwafuwa.gaku.XmlParsers.KanjiDict2.Kd2DTO.Kd2Character;
@@ -37,7 +36,7 @@ public class Kd2Parser implements DictParser {
     private IDatabaseHelper mDbHelper;
     private int parseCount = 0;
 
-    Kd2Parser(IDatabaseHelper dbHelper){
+    public Kd2Parser(IDatabaseHelper dbHelper){
         mDbHelper = dbHelper;
     }
 
@@ -103,14 +102,14 @@ public class Kd2Parser implements DictParser {
 
         for (Kd2RmGroup rmGroup : kd2RmGroups)
         {
-            EntryOptimized eo = new EntryOptimized();
+            CharacterOptimized co = new CharacterOptimized();
 
-            eo.setKanji(character.getLiteral());
-            eo.setReadings(String.format("(%s) [%s]", parseKd2CharacterOptimizedOnyomi(rmGroup), parseKd2CharacterOptimizedKunyomi(rmGroup)));
-            eo.setMeanings(parseKd2CharacterOptimizedMeaning(rmGroup));
-            eo.setDictionary(Constants.DB_KANJIDICT_NAME);
+            co.setKanji(character.getLiteral());
+            co.setOnyomi(parseKd2CharacterOptimizedOnyomi(rmGroup));
+            co.setKunyomi(parseKd2CharacterOptimizedKunyomi(rmGroup));
+            co.setMeaning(parseKd2CharacterOptimizedMeaning(rmGroup));
 
-            mDbHelper.getDbDao(EntryOptimized.class).create(eo);
+            mDbHelper.getDbDao(CharacterOptimized.class).create(co);
         }
     }
 
@@ -19,8 +19,12 @@ import java.util.concurrent.Callable;
 import ca.fuwafuwa.gaku.Database.DatabaseHelper;
 import ca.fuwafuwa.gaku.Database.DbHelperFactory;
 import ca.fuwafuwa.gaku.Database.IDatabaseHelper;
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.JmBinaryDictionary;
 import ca.fuwafuwa.gaku.Database.JmDictDatabase.JmDatabaseHelper;
+import ca.fuwafuwa.gaku.Database.KanjiDict2Database.KanjiTable;
 import ca.fuwafuwa.gaku.Database.KanjiDict2Database.Kd2DatabaseHelper;
+import ca.fuwafuwa.gaku.Search.EntryFormatter;
+import ca.fuwafuwa.gaku.Search.SearchCache;
 import ca.fuwafuwa.gaku.XmlParsers.Interfaces.DictParser;
 import ca.fuwafuwa.gaku.XmlParsers.JmDict.JmParser;
 import ca.fuwafuwa.gaku.XmlParsers.KanjiDict2.Kd2Parser;
@@ -76,6 +80,12 @@ public class ParserRunnable implements Runnable {
         });
 
         Log.d(TAG, String.format("FINISHED DICT, TOOK %d", System.currentTimeMillis() - startTime));
+
+        // Cached results may refer to entries that are no longer in the dictionary
+        SearchCache.getShared().invalidate();
+        EntryFormatter.invalidate();
+        KanjiTable.invalidate(mContext);
+        JmBinaryDictionary.invalidate(mContext);
     }
 }
 
@@ -0,0 +1,62 @@
+package ca.fuwafuwa.gaku;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BitmapPoolTest {
+
+    @Test
+    public void TestPixelsAreBucketedBySize() {
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+
+        int[] pixels = pool.acquirePixels(300);
+        assertEquals(512, pixels.length);
+        pool.releasePixels(pixels);
+
+        // Anything that rounds up to the same power of two gets the same array back
+        assertSame(pixels, pool.acquirePixels(257));
+        pool.releasePixels(pixels);
+        assertSame(pixels, pool.acquirePixels(512));
+        pool.releasePixels(pixels);
+
+        int[] larger = pool.acquirePixels(513);
+        assertNotSame(pixels, larger);
+        assertTrue(larger.length >= 513);
+
+        BitmapPool.Stats stats = pool.getStats();
+        assertEquals(2, stats.getHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals((512 + 1024) * 4, stats.getBytesAllocated());
+        assertEquals(512 * 4, stats.getPooledBytes());
+    }
+
+    @Test
+    public void TestPoolIsBounded() {
+        BitmapPool pool = new BitmapPool(4096);
+
+        int[] first = pool.acquirePixels(1024);
+        int[] second = pool.acquirePixels(1024);
+        pool.releasePixels(first);
+        pool.releasePixels(second);
+
+        assertEquals(4096, pool.getStats().getPooledBytes());
+        assertSame(first, pool.acquirePixels(1024));
+        assertNotSame(second, pool.acquirePixels(1024));
+    }
+
+    @Test
+    public void TestForeignArraysAreIgnored() {
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+
+        pool.releasePixels(new int[300]);
+        pool.releasePixels(null);
+        assertEquals(0, pool.getStats().getPooledBytes());
+
+        pool.clear();
+        assertEquals(0, pool.getStats().getPooledBytes());
+    }
+}
@@ -0,0 +1,192 @@
+package ca.fuwafuwa.gaku;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.fuwafuwa.gaku.Deinflictor.DeinflectionInfo;
+import ca.fuwafuwa.gaku.Deinflictor.Deinflector;
+
+import static org.junit.Assert.assertEquals;
+
+public class DeinflectorTest {
+
+    private static final String DEINFLECT_DAT = "src/main/assets/deinflect.dat";
+
+    private static final List<String> WORDS = Arrays.asList(
+            "食べさせられなかった",
+            "食べなかった",
+            "行きませんでした",
+            "読んでいる",
+            "しなければならない",
+            "美味しくありませんでした",
+            "来させられる",
+            "勉強しておきました",
+            "書かれていた",
+            "見たくない");
+
+    /**
+     * The rule matching as it was before the rules were compiled: group rules by the length of their inflected form
+     * and compare the tail of every word against each rule of every group
+     */
+    private static class GroupedDeinflector {
+
+        private static class Rule {
+            String from;
+            String to;
+            int type;
+            String reason;
+        }
+
+        private final List<List<Rule>> mRuleGroups = new ArrayList<>();
+
+        GroupedDeinflector(BufferedReader reader) throws IOException {
+            List<String> reasons = new ArrayList<>();
+            List<Rule> group = null;
+
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length == 1) {
+                    reasons.add(fields[0].trim());
+                }
+                else if (fields.length == 4) {
+                    Rule rule = new Rule();
+                    rule.from = fields[0].trim();
+                    rule.to = fields[1].trim();
+                    rule.type = Integer.parseInt(fields[2].trim());
+                    rule.reason = reasons.get(Integer.parseInt(fields[3].trim()));
+
+                    if (group == null || group.get(0).from.length() != rule.from.length()) {
+                        group = new ArrayList<>();
+                        mRuleGroups.add(group);
+                    }
+                    group.add(rule);
+                }
+            }
+        }
+
+        List<String[]> getPotentialDeinflections(String word) {
+            List<String[]> chain = new ArrayList<>();
+            List<Integer> types = new ArrayList<>();
+            Map<String, Integer> seen = new HashMap<>();
+
+            chain.add(new String[] { word, "" });
+            types.add(0xFF);
+            seen.put(word, 0);
+
+            for (int i = 0; i < chain.size(); i++) {
+                String currWord = chain.get(i)[0];
+                String currReason = chain.get(i)[1];
+
+                for (List<Rule> group : mRuleGroups) {
+                    int fromLength = group.get(0).from.length();
+                    if (fromLength > currWord.length()) continue;
+
+                    String wordTail = currWord.substring(currWord.length() - fromLength);
+                    for (Rule rule : group) {
+                        if ((types.get(i) & rule.type) == 0 || !wordTail.equals(rule.from)) continue;
+
+                        String newWord = currWord.substring(0, currWord.length() - rule.from.length()) + rule.to;
+                        if (newWord.length() <= 1) continue;
+
+                        Integer prevSeen = seen.get(newWord);
+                        if (prevSeen != null) {
+                            types.set(prevSeen, types.get(prevSeen) | (rule.type >> 8));
+                            continue;
+                        }
+
+                        String reason = currReason.isEmpty() ? "< " + rule.reason : "< " + rule.reason + " " + currReason;
+                        seen.put(newWord, chain.size());
+                        chain.add(new String[] { newWord, reason });
+                        types.add(rule.type >> 8);
+                    }
+                }
+            }
+
+            for (int i = 0; i < chain.size(); i++) {
+                chain.set(i, new String[] { chain.get(i)[0], chain.get(i)[1], Integer.toString(types.get(i)) });
+            }
+
+            return chain;
+        }
+    }
+
+    private static BufferedReader openRules() throws IOException {
+        return Files.newBufferedReader(Paths.get(DEINFLECT_DAT), StandardCharsets.UTF_8);
+    }
+
+    private static List<String> getAllPrefixes() {
+        List<String> prefixes = new ArrayList<>();
+        for (String word : WORDS) {
+            for (int i = word.length(); i > 0; i--) {
+                prefixes.add(word.substring(0, i));
+            }
+        }
+        return prefixes;
+    }
+
+    @Test
+    public void TestCompiledRulesMatchGroupedRules() throws IOException {
+        Deinflector deinflector = new Deinflector(openRules());
+        GroupedDeinflector grouped = new GroupedDeinflector(openRules());
+
+        for (String word : getAllPrefixes()) {
+            List<DeinflectionInfo> actual = deinflector.getPotentialDeinflections(word, null);
+            List<String[]> expected = grouped.getPotentialDeinflections(word);
+
+            assertEquals(word, expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(word, expected.get(i)[0], actual.get(i).getWord());
+                assertEquals(word, expected.get(i)[1], actual.get(i).getReason());
+                assertEquals(word, Integer.parseInt(expected.get(i)[2]), actual.get(i).getType());
+            }
+        }
+    }
+
+    @Test
+    public void BenchmarkDeinflection() throws IOException {
+        Deinflector deinflector = new Deinflector(openRules());
+        GroupedDeinflector grouped = new GroupedDeinflector(openRules());
+        List<String> words = getAllPrefixes();
+        int iterations = 2000;
+
+        // Warm up both so the JIT doesn't favour whichever runs second
+        for (int i = 0; i < iterations; i++) {
+            for (String word : words) {
+                deinflector.getPotentialDeinflections(word, null);
+                grouped.getPotentialDeinflections(word);
+            }
+        }
+
+        long startGrouped = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (String word : words) {
+                grouped.getPotentialDeinflections(word);
+            }
+        }
+        long groupedTime = System.nanoTime() - startGrouped;
+
+        long startCompiled = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (String word : words) {
+                deinflector.getPotentialDeinflections(word, null);
+            }
+        }
+        long compiledTime = System.nanoTime() - startCompiled;
+
+        long lookups = (long) iterations * words.size();
+        System.out.println(String.format("Grouped rules: %d ns per word", groupedTime / lookups));
+        System.out.println(String.format("Compiled rules: %d ns per word", compiledTime / lookups));
+    }
+}
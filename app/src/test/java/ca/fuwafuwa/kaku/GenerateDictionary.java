@@ -8,6 +8,7 @@ import com.j256.ormlite.jdbc.JdbcConnectionSource;
 import com.j256.ormlite.support.ConnectionSource;
 import com.j256.ormlite.table.TableUtils;
 
+import org.junit.Assume;
 import org.junit.Test;
 import org.kxml2.io.KXmlParser;
 import org.xmlpull.v1.XmlPullParser;
@@ -20,7 +21,10 @@ import java.sql.SQLException;
 
 import ca.fuwafuwa.gaku.Database.IDatabaseHelper;
 import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized;
+import ca.fuwafuwa.gaku.Database.KanjiDict2Database.Models.CharacterOptimized;
+import ca.fuwafuwa.gaku.XmlParsers.Interfaces.DictParser;
 import ca.fuwafuwa.gaku.XmlParsers.JmDict.JmParser;
+import ca.fuwafuwa.gaku.XmlParsers.KanjiDict2.Kd2Parser;
 
 public class GenerateDictionary {
     class DatabaseHelperImpl implements IDatabaseHelper {
@@ -38,7 +42,13 @@ public class GenerateDictionary {
     }
 
     /**
-     * This isn't actually a test, it generates the SQLite dictionary for the gaku
+     * Folder holding the dictionary XML files, where the generated databases are written too. The generators are
+     * skipped unless it is given, e.g. with -Dgaku.dictionaryDir=D:/Dev/gakuFiles
+     */
+    private static final String DICTIONARY_DIR_PROPERTY = "gaku.dictionaryDir";
+
+    /**
+     * This isn't actually a test, it generates the SQLite dictionaries for the gaku
      * app
      * I'm just too lazy to have it be in another project so it's in this here as a
      * test instead. Sorry.
@@ -49,9 +59,37 @@ public class GenerateDictionary {
      */
     @Test
     public void generateDic() throws Exception {
+        generate("gaku_edict.sqlite", "JMdictOriginal.xml", EntryOptimized.class, new ParserFactory() {
+            @Override
+            public DictParser create(IDatabaseHelper dbHelper) {
+                return new JmParser(dbHelper);
+            }
+        });
+    }
+
+    /**
+     * Generates the KANJIDIC2 database, shipped next to the JMdict one as Constants.KANJIDICT_DATABASE_NAME
+     */
+    @Test
+    public void generateKanjiDic() throws Exception {
+        generate("gaku_kanjidict.sqlite", "kanjidic2.xml", CharacterOptimized.class, new ParserFactory() {
+            @Override
+            public DictParser create(IDatabaseHelper dbHelper) {
+                return new Kd2Parser(dbHelper);
+            }
+        });
+    }
+
+    private interface ParserFactory {
+        DictParser create(IDatabaseHelper dbHelper);
+    }
+
+    private void generate(String dbName, String xmlName, Class<?> modelClass, ParserFactory parserFactory) throws Exception {
+        String dictionaryDir = System.getProperty(DICTIONARY_DIR_PROPERTY);
+        Assume.assumeTrue(DICTIONARY_DIR_PROPERTY + " isn't set", dictionaryDir != null && !dictionaryDir.isEmpty());
 
-        String dbPath = "D:/Dev/gakuFiles/gaku_edict.sqlite";
-        String xmlPath = "D:/Dev/gakuFiles/JMdictOriginal.xml";
+        String dbPath = new File(dictionaryDir, dbName).getPath();
+        String xmlPath = new File(dictionaryDir, xmlName).getPath();
         String databaseUrl = String.format("jdbc:sqlite:%s", dbPath);
 
         Files.deleteIfExists(Paths.get(dbPath));
@@ -63,12 +101,11 @@ public class GenerateDictionary {
         ConnectionSource connectionSource = null;
         try {
             connectionSource = new JdbcConnectionSource(databaseUrl);
-            TableUtils.createTable(connectionSource, EntryOptimized.class);
+            TableUtils.createTable(connectionSource, modelClass);
 
             DatabaseHelperImpl dbHelper = new DatabaseHelperImpl(connectionSource);
 
-            JmParser jmParser = new JmParser(dbHelper);
-            jmParser.parseDict(mParser);
+            parserFactory.create(dbHelper).parseDict(mParser);
         } finally {
             if (connectionSource != null) {
                 connectionSource.close();
@@ -0,0 +1,142 @@
+package ca.fuwafuwa.gaku;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.table.TableUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ca.fuwafuwa.gaku.Database.IDatabaseHelper;
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.JmBinaryDictionary;
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JmBinaryDictionaryTest {
+
+    private static final String DATABASE_URL = "jdbc:sqlite:file:binarydictionary?mode=memory&cache=shared";
+
+    private JdbcConnectionSource mConnectionSource;
+    private Connection mConnection;
+    private Dao<EntryOptimized, Integer> mDao;
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        // Holding a connection open keeps the shared in-memory database alive for the length of the test
+        mConnection = DriverManager.getConnection(DATABASE_URL);
+        mConnectionSource = new JdbcConnectionSource(DATABASE_URL);
+        TableUtils.createTable(mConnectionSource, EntryOptimized.class);
+        mDao = DaoManager.createDao(mConnectionSource, EntryOptimized.class);
+        mFile = File.createTempFile("binarydictionary", ".bin");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mConnectionSource.close();
+        mConnection.close();
+        mFile.delete();
+    }
+
+    private EntryOptimized createEntry(String kanji, String readings, String meanings, String pos, String dictionary) throws SQLException {
+        EntryOptimized entry = new EntryOptimized();
+        entry.setKanji(kanji);
+        entry.setReadings(readings);
+        entry.setMeanings(meanings);
+        entry.setPos(pos);
+        entry.setDictionary(dictionary);
+        entry.setPrimaryEntry(true);
+        entry.setRank(42);
+        entry.setPosMask(0x15);
+        mDao.create(entry);
+        return entry;
+    }
+
+    private JmBinaryDictionary writeAndOpen() throws Exception {
+        JmBinaryDictionary.write(new IDatabaseHelper() {
+            @Override
+            public <T> Dao<T, Integer> getDbDao(Class clazz) throws SQLException {
+                return DaoManager.createDao(mConnectionSource, clazz);
+            }
+        }, mFile);
+        return JmBinaryDictionary.open(mFile);
+    }
+
+    @Test
+    public void TestRoundTrip() throws Exception {
+        EntryOptimized neko = createEntry("猫", "ねこ", "cat￼cat lover", "n", Constants.DB_JMDICT_NAME);
+        EntryOptimized kanjiOnly = createEntry("𠮟る", null, null, null, Constants.DB_JMDICT_NAME);
+        EntryOptimized empty = createEntry("", "", "", "", "");
+
+        JmBinaryDictionary dictionary = writeAndOpen();
+        assertEquals(3, dictionary.getEntryCount());
+
+        List<EntryOptimized> entries = dictionary.getEntries(Arrays.asList(kanjiOnly.getId(), neko.getId(), empty.getId()));
+        assertEquals(3, entries.size());
+
+        EntryOptimized entry = entries.get(1);
+        assertEquals(neko.getId(), entry.getId());
+        assertEquals("猫", entry.getKanji());
+        assertEquals("ねこ", entry.getReadings());
+        assertEquals("cat￼cat lover", entry.getMeanings());
+        assertEquals("n", entry.getPos());
+        assertEquals(Constants.DB_JMDICT_NAME, entry.getDictionary());
+        assertTrue(entry.isPrimaryEntry());
+        assertEquals(42, entry.getRank());
+        assertEquals(0x15, entry.getPosMask());
+
+        // Null and empty fields are told apart, and characters outside the BMP survive
+        entry = entries.get(0);
+        assertEquals("𠮟る", entry.getKanji());
+        assertNull(entry.getMeanings());
+        assertEquals("", entry.getReadings());
+        assertEquals("", entry.getPos());
+
+        entry = entries.get(2);
+        assertEquals("", entry.getKanji());
+        assertEquals("", entry.getMeanings());
+        assertEquals("", entry.getDictionary());
+    }
+
+    @Test
+    public void TestUnknownIdsSkipped() throws Exception {
+        EntryOptimized neko = createEntry("猫", "ねこ", "cat", "n", Constants.DB_JMDICT_NAME);
+
+        JmBinaryDictionary dictionary = writeAndOpen();
+        List<EntryOptimized> entries = dictionary.getEntries(Arrays.asList(-1, neko.getId() + 1, neko.getId()));
+
+        assertEquals(1, entries.size());
+        assertEquals("猫", entries.get(0).getKanji());
+    }
+
+    @Test
+    public void TestForEachKeyInKanjiOrder() throws Exception {
+        createEntry("猫", "ねこ", "cat", "n", Constants.DB_JMDICT_NAME);
+        createEntry("犬", "いぬ", "dog", "n", Constants.DB_JMDICT_NAME);
+        createEntry(null, "ねずみ", "mouse", "n", Constants.DB_JMDICT_NAME);
+
+        final List<String> visited = new ArrayList<>();
+        writeAndOpen().forEachKey(new kotlin.jvm.functions.Function4<Integer, String, String, String, kotlin.Unit>() {
+            @Override
+            public kotlin.Unit invoke(Integer id, String kanji, String readings, String dictionary) {
+                visited.add(kanji + "/" + readings + "/" + dictionary);
+                return kotlin.Unit.INSTANCE;
+            }
+        });
+
+        assertEquals(Arrays.asList("null/ねずみ/JMDICT", "犬/いぬ/JMDICT", "猫/ねこ/JMDICT"), visited);
+    }
+}
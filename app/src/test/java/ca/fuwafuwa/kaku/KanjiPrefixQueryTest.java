@@ -0,0 +1,134 @@
+package ca.fuwafuwa.gaku;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.table.TableUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.KanjiPrefixQuery;
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class KanjiPrefixQueryTest {
+
+    private static final String DATABASE_URL = "jdbc:sqlite:file:kanjiprefix?mode=memory&cache=shared";
+
+    private static final List<String> KANJI = Arrays.asList(
+            "食", "食べる", "食べ物", "食事", "飲む", "飲み物", "猫", "猫舌",
+            "𠮟る", "𠮟責", "𠮷野家", "100%", "100_", "1000", "a_b", "axb", "ｶﾀｶﾅ");
+
+    private JdbcConnectionSource mConnectionSource;
+    private Connection mConnection;
+    private String mTable;
+
+    @Before
+    public void setUp() throws SQLException {
+        // Holding a connection open keeps the shared in-memory database alive for the length of the test
+        mConnection = DriverManager.getConnection(DATABASE_URL);
+        mConnectionSource = new JdbcConnectionSource(DATABASE_URL);
+        TableUtils.createTable(mConnectionSource, EntryOptimized.class);
+
+        Dao<EntryOptimized, Integer> dao = DaoManager.createDao(mConnectionSource, EntryOptimized.class);
+        mTable = dao.getTableName();
+        for (String kanji : KANJI) {
+            EntryOptimized entry = new EntryOptimized();
+            entry.setKanji(kanji);
+            dao.create(entry);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mConnectionSource.close();
+        mConnection.close();
+    }
+
+    private List<String> queryPrefix(String prefix) throws SQLException {
+        List<String> kanji = new ArrayList<>();
+        try (PreparedStatement statement = mConnection.prepareStatement(KanjiPrefixQuery.getSql("kanji", mTable, prefix))) {
+            String[] args = KanjiPrefixQuery.getArgs(prefix);
+            for (int i = 0; i < args.length; i++) {
+                statement.setString(i + 1, args[i]);
+            }
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    kanji.add(results.getString(1));
+                }
+            }
+        }
+        Collections.sort(kanji);
+        return kanji;
+    }
+
+    private String explainPrefix(String prefix) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        try (PreparedStatement statement = mConnection.prepareStatement("EXPLAIN QUERY PLAN " + KanjiPrefixQuery.getSql("kanji", mTable, prefix))) {
+            String[] args = KanjiPrefixQuery.getArgs(prefix);
+            for (int i = 0; i < args.length; i++) {
+                statement.setString(i + 1, args[i]);
+            }
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    plan.append(results.getString("detail")).append('\n');
+                }
+            }
+        }
+        return plan.toString();
+    }
+
+    private static List<String> expectedPrefix(String prefix) {
+        List<String> kanji = new ArrayList<>();
+        for (String k : KANJI) {
+            if (k.startsWith(prefix)) {
+                kanji.add(k);
+            }
+        }
+        Collections.sort(kanji);
+        return kanji;
+    }
+
+    @Test
+    public void TestRangeMatchesStartsWith() throws SQLException {
+        for (String prefix : Arrays.asList("食", "食べ", "飲", "猫", "𠮟", "𠮷", "100%", "100_", "100", "a_", "ｶ", "犬", "")) {
+            assertEquals(prefix, expectedPrefix(prefix), queryPrefix(prefix));
+        }
+    }
+
+    @Test
+    public void TestRangeUsesKanjiIndex() throws SQLException {
+        for (String prefix : Arrays.asList("食", "𠮟", "100%")) {
+            String plan = explainPrefix(prefix);
+            assertTrue(plan, plan.contains("USING INDEX " + KanjiPrefixQuery.INDEX_NAME) || plan.contains("USING COVERING INDEX " + KanjiPrefixQuery.INDEX_NAME));
+            assertFalse(plan, plan.contains("SCAN"));
+        }
+    }
+
+    @Test
+    public void TestUpperBound() {
+        assertEquals("b", KanjiPrefixQuery.getUpperBound("a"));
+        assertEquals("食び", KanjiPrefixQuery.getUpperBound("食ひ"));
+        assertEquals(new String(Character.toChars(0x20BA0)), KanjiPrefixQuery.getUpperBound(new String(Character.toChars(0x20B9F))));
+        assertEquals("\uE000", KanjiPrefixQuery.getUpperBound("\uD7FF"));
+        assertEquals("b", KanjiPrefixQuery.getUpperBound("a" + new String(Character.toChars(Character.MAX_CODE_POINT))));
+        assertNull(KanjiPrefixQuery.getUpperBound(new String(Character.toChars(Character.MAX_CODE_POINT))));
+        assertNull(KanjiPrefixQuery.getUpperBound(""));
+    }
+}
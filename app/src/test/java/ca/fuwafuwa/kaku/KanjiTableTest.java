@@ -0,0 +1,87 @@
+package ca.fuwafuwa.gaku;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.fuwafuwa.gaku.Database.KanjiDict2Database.KanjiTable;
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.Models.EntryOptimized;
+import ca.fuwafuwa.gaku.Database.KanjiDict2Database.Models.CharacterOptimized;
+import ca.fuwafuwa.gaku.Search.EntryFormatter;
+import ca.fuwafuwa.gaku.Search.JmMatcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KanjiTableTest {
+
+    private static CharacterOptimized character(String kanji, String onyomi, String kunyomi, String meaning) {
+        CharacterOptimized character = new CharacterOptimized();
+        character.setKanji(kanji);
+        character.setOnyomi(onyomi);
+        character.setKunyomi(kunyomi);
+        character.setMeaning(meaning);
+        return character;
+    }
+
+    private static KanjiTable writeTable(List<CharacterOptimized> characters) throws IOException {
+        File file = File.createTempFile("kanji", ".table");
+        file.deleteOnExit();
+        KanjiTable.write(characters, file);
+        return KanjiTable.open(file);
+    }
+
+    @Test
+    public void TestDenseAndOverflowLookups() throws IOException {
+        List<CharacterOptimized> characters = new ArrayList<>();
+        characters.add(character("猫", "ビョウ", "ねこ", "cat"));
+        characters.add(character("一", "イチ, イツ", "ひと-, ひと.つ", "one" + Constants.DB_SPLIT_CHAR + "one radical (no.1)"));
+        characters.add(character("龥", null, "", "appeal"));
+        // Outside the CJK Unified Ideographs block: extension A, extension B and a compatibility ideograph
+        characters.add(character("㐂", "キ", "よろこ.ぶ", "rejoice"));
+        characters.add(character("𠀋", "ジョウ", "", "?"));
+        characters.add(character("朗", "ロウ", "", "bright"));
+
+        KanjiTable table = writeTable(characters);
+
+        for (CharacterOptimized expected : characters) {
+            List<CharacterOptimized> actual = table.get(expected.getKanji().codePointAt(0));
+            assertEquals(expected.getKanji(), 1, actual.size());
+            assertEquals(expected.getKanji(), actual.get(0).getKanji());
+            assertEquals(expected.getOnyomi(), actual.get(0).getOnyomi());
+            assertEquals(expected.getKunyomi(), actual.get(0).getKunyomi());
+            assertEquals(expected.getMeaning(), actual.get(0).getMeaning());
+        }
+
+        assertTrue(table.get("犬".codePointAt(0)).isEmpty());
+        assertTrue(table.get("a".codePointAt(0)).isEmpty());
+        assertTrue(table.get("𠀌".codePointAt(0)).isEmpty());
+    }
+
+    @Test
+    public void TestGroupsKeepTheirOrder() throws IOException {
+        List<CharacterOptimized> characters = new ArrayList<>();
+        characters.add(character("生", "セイ, ショウ", "い.きる", "life"));
+        characters.add(character("猫", "ビョウ", "ねこ", "cat"));
+        characters.add(character("生", "", "なま", "raw"));
+
+        List<CharacterOptimized> actual = writeTable(characters).get("生".codePointAt(0));
+        assertEquals(2, actual.size());
+        assertEquals("life", actual.get(0).getMeaning());
+        assertEquals("raw", actual.get(1).getMeaning());
+        assertEquals("なま", actual.get(1).getKunyomi());
+    }
+
+    @Test
+    public void TestKanjiEntryFormats() {
+        EntryOptimized entry = JmMatcher.getKanjiEntry(character("一", "イチ, イツ", null, "one" + Constants.DB_SPLIT_CHAR + "one radical (no.1)"));
+
+        assertEquals("(イチ, イツ) []", entry.getReadings());
+        assertEquals(Constants.DB_KANJIDICT_NAME, entry.getDictionary());
+        assertEquals("① one ② one radical (no.1)", EntryFormatter.getMeaning(entry));
+        assertEquals(EntryFormatter.getMeaning(entry), EntryFormatter.getSummary(entry));
+    }
+}
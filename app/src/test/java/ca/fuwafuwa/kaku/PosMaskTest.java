@@ -0,0 +1,50 @@
+package ca.fuwafuwa.gaku;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import ca.fuwafuwa.gaku.Database.JmDictDatabase.PosMask;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PosMaskTest {
+
+    private static final String DEINFLECT_DAT = "src/main/assets/deinflect.dat";
+
+    @Test
+    public void TestPosTagsSetTheirBits() {
+        String split = Constants.DB_SPLIT_CHAR;
+
+        assertEquals(0, PosMask.compute(null));
+        assertEquals(0, PosMask.compute("n" + split + "adj-no"));
+        assertEquals(PosMask.ICHIDAN, PosMask.compute("v1,vt"));
+        assertEquals(PosMask.GODAN, PosMask.compute("v5k,vi"));
+        assertEquals(PosMask.ADJECTIVE_I, PosMask.compute("adj-i"));
+        assertEquals(PosMask.KURU, PosMask.compute("vk"));
+        assertEquals(PosMask.SURU, PosMask.compute("n,vs-s"));
+        assertEquals(PosMask.GODAN | PosMask.SURU, PosMask.compute("v5r" + split + "n,vs-i"));
+    }
+
+    @Test
+    public void TestRuleTypesAreCoveredByPosBits() throws IOException {
+        int posBits = PosMask.ICHIDAN | PosMask.GODAN | PosMask.ADJECTIVE_I | PosMask.KURU | PosMask.SURU;
+
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(DEINFLECT_DAT), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 4) continue;
+
+                // The high byte is the type of the deinflected word, which is what gets checked against entries
+                int type = Integer.parseInt(fields[2].trim()) >> 8;
+                assertTrue(line, type != 0 && (type & ~posBits) == 0);
+            }
+        }
+    }
+}
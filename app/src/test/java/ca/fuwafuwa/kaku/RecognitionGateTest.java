@@ -0,0 +1,175 @@
+package ca.fuwafuwa.gaku;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import ca.fuwafuwa.gaku.Ocr.RecognitionGate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RecognitionGateTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    // Long enough for a waiting thread to have blocked, short enough to keep the tests quick
+    private static final long SETTLE_MILLIS = 100;
+
+    private static FutureTask<Boolean> startAcquire(final RecognitionGate gate, final long token) {
+        return start(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return gate.acquire(token, TIMEOUT_MILLIS);
+            }
+        });
+    }
+
+    private static FutureTask<Boolean> startAwaitResult(final RecognitionGate gate, final long token) {
+        return start(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return gate.awaitResult(token, TIMEOUT_MILLIS);
+            }
+        });
+    }
+
+    private static FutureTask<Boolean> start(Callable<Boolean> callable) {
+        FutureTask<Boolean> task = new FutureTask<>(callable);
+        Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        thread.start();
+        return task;
+    }
+
+    private static void assertStillWaiting(FutureTask<Boolean> task) throws Exception {
+        try {
+            task.get(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+            fail("Expected the task to still be waiting");
+        } catch (TimeoutException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void TestNewerTokenMakesOlderStale() {
+        RecognitionGate gate = new RecognitionGate();
+        long first = gate.newToken();
+        assertFalse(gate.isStale(first));
+
+        long second = gate.newToken();
+        assertTrue(gate.isStale(first));
+        assertFalse(gate.isStale(second));
+
+        gate.cancel();
+        assertTrue(gate.isStale(second));
+    }
+
+    @Test
+    public void TestResultDeliveredWhenRecognitionCompletes() throws Exception {
+        RecognitionGate gate = new RecognitionGate();
+        long token = gate.newToken();
+        assertTrue(gate.acquire(token, TIMEOUT_MILLIS));
+
+        FutureTask<Boolean> result = startAwaitResult(gate, token);
+        assertStillWaiting(result);
+
+        gate.release();
+        assertTrue(result.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void TestNewerRequestAbandonsWaitImmediately() throws Exception {
+        RecognitionGate gate = new RecognitionGate();
+        long token = gate.newToken();
+        assertTrue(gate.acquire(token, TIMEOUT_MILLIS));
+
+        FutureTask<Boolean> result = startAwaitResult(gate, token);
+        assertStillWaiting(result);
+
+        // The abandoned recognition is still running, but the wait for it ends as soon as a newer request comes in
+        gate.newToken();
+        assertFalse(result.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void TestCancelAbandonsWait() throws Exception {
+        RecognitionGate gate = new RecognitionGate();
+        long token = gate.newToken();
+        assertTrue(gate.acquire(token, TIMEOUT_MILLIS));
+
+        FutureTask<Boolean> result = startAwaitResult(gate, token);
+        assertStillWaiting(result);
+
+        gate.cancel();
+        assertFalse(result.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void TestNewRequestWaitsForAbandonedRecognition() throws Exception {
+        RecognitionGate gate = new RecognitionGate();
+        long abandoned = gate.newToken();
+        assertTrue(gate.acquire(abandoned, TIMEOUT_MILLIS));
+
+        long next = gate.newToken();
+        FutureTask<Boolean> acquire = startAcquire(gate, next);
+        assertStillWaiting(acquire);
+
+        // Submitted as soon as the abandoned recognition completes, not before
+        gate.release();
+        assertTrue(acquire.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertFalse(gate.isStale(next));
+    }
+
+    @Test
+    public void TestSupersededRequestNeverSubmitted() throws Exception {
+        RecognitionGate gate = new RecognitionGate();
+        long abandoned = gate.newToken();
+        assertTrue(gate.acquire(abandoned, TIMEOUT_MILLIS));
+
+        long superseded = gate.newToken();
+        FutureTask<Boolean> supersededAcquire = startAcquire(gate, superseded);
+        assertStillWaiting(supersededAcquire);
+
+        // A newer request while the recognizer is still busy drops the one held back, without it reaching the recognizer
+        long newest = gate.newToken();
+        assertFalse(supersededAcquire.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        FutureTask<Boolean> newestAcquire = startAcquire(gate, newest);
+        assertStillWaiting(newestAcquire);
+
+        gate.release();
+        assertTrue(newestAcquire.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void TestStaleRequestNotSubmittedWhenIdle() throws Exception {
+        RecognitionGate gate = new RecognitionGate();
+        long stale = gate.newToken();
+        long latest = gate.newToken();
+
+        assertFalse(gate.acquire(stale, TIMEOUT_MILLIS));
+
+        // Dropping the stale request left the recognizer free
+        assertTrue(gate.acquire(latest, TIMEOUT_MILLIS));
+    }
+
+    @Test
+    public void TestAcquireTimesOutWhileRecognizerBusy() throws Exception {
+        RecognitionGate gate = new RecognitionGate();
+        long token = gate.newToken();
+        assertTrue(gate.acquire(token, TIMEOUT_MILLIS));
+
+        try {
+            gate.acquire(token, SETTLE_MILLIS);
+            fail("Expected a TimeoutException");
+        } catch (TimeoutException e) {
+            assertEquals("Recognizer still busy after " + SETTLE_MILLIS + " ms", e.getMessage());
+        }
+    }
+}
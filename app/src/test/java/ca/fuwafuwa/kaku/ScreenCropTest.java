@@ -0,0 +1,75 @@
+package ca.fuwafuwa.gaku;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import ca.fuwafuwa.gaku.Ocr.BoxParams;
+import ca.fuwafuwa.gaku.Ocr.ScreenCrop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ScreenCropTest {
+
+    private static final int FRAME_WIDTH = 10;
+    private static final int FRAME_HEIGHT = 6;
+
+    // Encodes where a pixel is in its color, so a crop shows where it was copied from
+    private static int colorAt(int x, int y) {
+        return 0xFF000000 | (x << 16) | (y << 8) | (x + y);
+    }
+
+    // An RGBA_8888 frame laid out the way ImageReader lays out a plane, with padding after every row but the last
+    private static ByteBuffer makeFrame(int pixelStride, int rowPadding) {
+        int rowStride = FRAME_WIDTH * pixelStride + rowPadding;
+        ByteBuffer frame = ByteBuffer.allocate(rowStride * (FRAME_HEIGHT - 1) + FRAME_WIDTH * pixelStride);
+        for (int y = 0; y < FRAME_HEIGHT; y++) {
+            for (int x = 0; x < FRAME_WIDTH; x++) {
+                int color = colorAt(x, y);
+                int i = y * rowStride + x * pixelStride;
+                frame.put(i, (byte) (color >> 16));
+                frame.put(i + 1, (byte) (color >> 8));
+                frame.put(i + 2, (byte) color);
+                frame.put(i + 3, (byte) (color >>> 24));
+            }
+        }
+        return frame;
+    }
+
+    private static void assertCrop(ScreenCrop crop, BoxParams box) {
+        assertEquals(box.width * box.height, crop.getPixels().length);
+        for (int y = 0; y < box.height; y++) {
+            for (int x = 0; x < box.width; x++) {
+                assertEquals(colorAt(box.x + x, box.y + y), crop.getPixel(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void TestCopiesOnlyTheBox() {
+        ByteBuffer frame = makeFrame(4, 0);
+        BoxParams box = new BoxParams(2, 1, 5, 3);
+        assertCrop(ScreenCrop.copyFrom(frame, FRAME_WIDTH * 4, 4, FRAME_WIDTH, FRAME_HEIGHT, box), box);
+        assertEquals(0, frame.position());
+    }
+
+    @Test
+    public void TestRespectsStrides() {
+        ByteBuffer frame = makeFrame(8, 24);
+        BoxParams box = new BoxParams(0, 0, FRAME_WIDTH, FRAME_HEIGHT);
+        assertCrop(ScreenCrop.copyFrom(frame, FRAME_WIDTH * 8 + 24, 8, FRAME_WIDTH, FRAME_HEIGHT, box), box);
+
+        BoxParams corner = new BoxParams(FRAME_WIDTH - 3, FRAME_HEIGHT - 2, 3, 2);
+        assertCrop(ScreenCrop.copyFrom(frame, FRAME_WIDTH * 8 + 24, 8, FRAME_WIDTH, FRAME_HEIGHT, corner), corner);
+    }
+
+    @Test
+    public void TestBoxOutsideFrame() {
+        ByteBuffer frame = makeFrame(4, 0);
+        assertNull(ScreenCrop.copyFrom(frame, FRAME_WIDTH * 4, 4, FRAME_WIDTH, FRAME_HEIGHT, new BoxParams(8, 0, 3, 2)));
+        assertNull(ScreenCrop.copyFrom(frame, FRAME_WIDTH * 4, 4, FRAME_WIDTH, FRAME_HEIGHT, new BoxParams(0, 5, 2, 2)));
+        assertNull(ScreenCrop.copyFrom(frame, FRAME_WIDTH * 4, 4, FRAME_WIDTH, FRAME_HEIGHT, new BoxParams(-1, 0, 2, 2)));
+        assertNull(ScreenCrop.copyFrom(frame, FRAME_WIDTH * 4, 4, FRAME_WIDTH, FRAME_HEIGHT, new BoxParams(0, 0, 0, 2)));
+    }
+}
@@ -0,0 +1,95 @@
+package ca.fuwafuwa.gaku;
+
+import org.junit.Test;
+
+import java.text.Normalizer;
+
+import static org.junit.Assert.assertEquals;
+
+public class SearchKeyTest {
+
+    private static String key(String text) {
+        return LangUtils.Companion.ToSearchKey(text, 0, text.length()).getKey();
+    }
+
+    private static String str(int... codePoints) {
+        return new String(codePoints, 0, codePoints.length);
+    }
+
+    /**
+     * Every half-width form, alone and followed by each (semi-)voiced mark that composes with it, must fold the same as
+     * its full-width form
+     */
+    @Test
+    public void TestHalfWidthFormsFoldLikeFullWidth() {
+        for (int c = 0xFF61; c <= 0xFF9D; c++) {
+            String[] texts = { str(c), str(c, 0xFF9E), str(c, 0xFF9F) };
+            for (String text : texts) {
+                String fullWidth = Normalizer.normalize(text, Normalizer.Form.NFKC);
+                // Mark doesn't compose with this kana, or only into the rare ヷ-ヺ that aren't in the tables
+                if (text.length() > 1 && (fullWidth.length() != 1 || fullWidth.charAt(0) > 0x30F4)) continue;
+
+                assertEquals(Integer.toHexString(c), key(fullWidth), key(text));
+            }
+        }
+    }
+
+    /**
+     * Half-width kana without marks must fold exactly like ConvertKanatanaToHiragana, which is built from the same tables
+     */
+    @Test
+    public void TestHalfWidthKanaMatchesKanaTables() {
+        for (int c = 0xFF66; c <= 0xFF9D; c++) {
+            assertEquals(Integer.toHexString(c), LangUtils.Companion.ConvertKanatanaToHiragana(str(c)), key(str(c)));
+        }
+    }
+
+    @Test
+    public void TestKatakanaFoldsToHiragana() {
+        for (int c = 0x30A1; c <= 0x30F3; c++) {
+            assertEquals(Integer.toHexString(c), str(c - 0x60), key(str(c)));
+        }
+        assertEquals("こーひー", key("コーヒー"));
+        assertEquals("こーひー", key("ｺｰﾋｰ"));
+    }
+
+    @Test
+    public void TestFullWidthAsciiFoldsToAscii() {
+        for (int c = 0xFF01; c <= 0xFF5D; c++) {
+            assertEquals(Integer.toHexString(c), Normalizer.normalize(str(c), Normalizer.Form.NFKC), key(str(c)));
+        }
+    }
+
+    @Test
+    public void TestTildesAreDropped() {
+        assertEquals("すごい", key("すご～い"));
+        assertEquals("すごい", key("すごい〜"));
+    }
+
+    @Test
+    public void TestIterationMarksRepeatPreviousChar() {
+        assertEquals("人人", key("人々"));
+        assertEquals("こころ", key("こゝろ"));
+        assertEquals("いすず", key("いすゞ"));
+        assertEquals("ばは", key("ばゝ"));
+        assertEquals("はば", key("はゞ"));
+        assertEquals("ぱぱ", key("パパ"));
+        assertEquals("ここ", key("コヽ"));
+        assertEquals("々", key("々"));
+    }
+
+    @Test
+    public void TestSourceLengthsMapBackToText() {
+        String text = "ｶﾞｯｺｳ～です";
+        LangUtils.SearchKey searchKey = LangUtils.Companion.ToSearchKey(text, 0, text.length());
+
+        assertEquals("がっこうです", searchKey.getKey());
+        assertEquals(0, searchKey.getSourceLength(0));
+        assertEquals(2, searchKey.getSourceLength(1));
+        assertEquals(6, searchKey.getSourceLength(4));
+        assertEquals(text.length(), searchKey.getSourceLength(searchKey.getKey().length()));
+
+        // Offsets are relative to the start of the folded range
+        assertEquals(2, LangUtils.Companion.ToSearchKey(text, 2, text.length()).getSourceLength(2));
+    }
+}